@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/********* Grail sorting engine generator ****************/
+/*                                                       */
+/* The specialized engines (IntGrailSort, RecordGrailSort*/
+/* and the rest) share one block merge sort, which lives */
+/* once in GrailEngine.template. Each engine is          */
+/* described by a file in engines/ that sets its types,  */
+/* its comparison and its flags, and supplies the parts  */
+/* of the source that are its own: the header, the item  */
+/* moves and the public methods, plus any parts of the   */
+/* algorithm it does differently.                        */
+/*                                                       */
+/* Run from the repository root, on JDK 11 or later:     */
+/*   java codegen/GrailEngineGenerator.java              */
+/* rewrites src/javagrailsort/<Engine>.java for every    */
+/* engine, and                                           */
+/*   java codegen/GrailEngineGenerator.java --check      */
+/* only reports engines whose source is out of date.     */
+/*                                                       */
+/* Template directives, each on a line of its own:       */
+/*  //#if FLAGS, //#elif FLAGS, //#else, //#end          */
+/*      FLAGS is a | b | ..., each a flag or !flag       */
+/*  //#part NAME ... //#end                              */
+/*      replaced by the engine's part NAME if it has     */
+/*      one, otherwise the lines in between are kept     */
+/* and in the text:                                      */
+/*  ${name}        a value set by the engine             */
+/*  $CMP(a, b)     compares the items at positions a, b  */
+/*  $CMPKEY(a)     compares the item at a with the key   */
+/*                 of a search                           */
+/*  $KEYAT(a)      the key argument for the item at a    */
+/*                                                       */
+/* Engine files hold //@set NAME VALUE, //@flags A B ... */
+/* and //@part NAME ... //@end blocks. Parts go through  */
+/* the same expansion as the template.                   */
+/*                                                       */
+/* Flags:                                                */
+/*  VALUE          items are compared by value           */
+/*  STATIC         static methods, no instance           */
+/*  IDX            an int[] idx moves with the items     */
+/*  COLUMNS        GrailColumns move with the items      */
+/*  RECORD         items are records in a ByteBuffer,    */
+/*                 moved only by copies and swaps        */
+/*  NETWORK        short runs go to GrailSortingNetworks */
+/*  MERGESORT      merge sort when the buffer is large   */
+/*  COUNT_FEW_KEYS few keys are counted and written back */
+/*  ADAPTIVE       the natural merge sort                */
+/*                                                       */
+/*********************************************************/
+
+public class GrailEngineGenerator {
+
+    static final Path ROOT = Paths.get("codegen");
+    static final Path TEMPLATE = ROOT.resolve("GrailEngine.template");
+    static final Path ENGINES = ROOT.resolve("engines");
+    static final Path OUTPUT = Paths.get("src", "javagrailsort");
+
+    static final class Engine {
+        final String name;
+        final Map<String, String> values = new HashMap<>();
+        final Set<String> flags = new HashSet<>();
+        final Map<String, List<String>> parts = new HashMap<>();
+
+        Engine(String name) {
+            this.name = name;
+        }
+
+        String value(String key) {
+            String value = this.values.get(key);
+            if(value == null) throw new IllegalStateException(this.name + ": no value for ${" + key + "}");
+            return value;
+        }
+    }
+
+    static Engine readEngine(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        Engine engine = new Engine(fileName.substring(0, fileName.length() - ".engine".length()));
+        engine.values.put("Class", engine.name);
+
+        List<String> part = null;
+        for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+
+            if(part != null) {
+                if(trimmed.equals("//@end")) part = null;
+                else part.add(line);
+            }
+            else if(trimmed.startsWith("//@set ")) {
+                String rest = trimmed.substring("//@set ".length());
+                int space = rest.indexOf(' ');
+                engine.values.put(space < 0 ? rest : rest.substring(0, space), space < 0 ? "" : rest.substring(space + 1));
+            }
+            else if(trimmed.startsWith("//@flags")) {
+                for(String flag : trimmed.substring("//@flags".length()).trim().split("\\s+")) {
+                    if(!flag.isEmpty()) engine.flags.add(flag);
+                }
+            }
+            else if(trimmed.startsWith("//@part ")) {
+                part = new ArrayList<>();
+                if(engine.parts.put(trimmed.substring("//@part ".length()).trim(), part) != null) {
+                    throw new IllegalStateException(file + ": part defined twice: " + trimmed);
+                }
+            }
+            else if(!trimmed.isEmpty() && !trimmed.startsWith("//")) {
+                throw new IllegalStateException(file + ": text outside of a part: " + line);
+            }
+        }
+        if(part != null) throw new IllegalStateException(file + ": part without //@end");
+
+        // STATIC engines are all static methods, the others sort through an instance
+        engine.values.put("static", engine.flags.contains("STATIC") ? "static " : "");
+        return engine;
+    }
+
+    /******** Directives *********/
+
+    static boolean matches(Engine engine, String expression) {
+        for(String term : expression.split("\\|")) {
+            term = term.trim();
+            boolean negated = term.startsWith("!");
+            if(negated) term = term.substring(1).trim();
+            if(term.isEmpty()) throw new IllegalStateException("empty flag in " + expression);
+            if(engine.flags.contains(term) != negated) return true;
+        }
+        return false;
+    }
+
+    static String directive(String line) {
+        String trimmed = line.trim();
+        return trimmed.startsWith("//#") ? trimmed.substring(3) : null;
+    }
+
+    // index of the //#end, //#elif or //#else that closes the block opened at open
+    static int blockEnd(List<String> lines, int open, boolean stopAtElse) {
+        int depth = 0;
+        for(int i = open + 1; i < lines.size(); i++) {
+            String directive = directive(lines.get(i));
+            if(directive == null) continue;
+
+            if(directive.startsWith("if ") || directive.startsWith("part ")) depth++;
+            else if(directive.equals("end")) {
+                if(depth == 0) return i;
+                depth--;
+            }
+            else if(stopAtElse && depth == 0 && (directive.startsWith("elif ") || directive.equals("else"))) return i;
+        }
+        throw new IllegalStateException("unclosed //#" + directive(lines.get(open)));
+    }
+
+    static void expandLines(Engine engine, List<String> lines, int from, int to, List<String> out) {
+        int i = from;
+        while(i < to) {
+            String line = lines.get(i);
+            String directive = directive(line);
+
+            if(directive == null) {
+                out.add(expandText(engine, line));
+                i++;
+            }
+            else if(directive.startsWith("part ")) {
+                int end = blockEnd(lines, i, false);
+                List<String> part = engine.parts.get(directive.substring("part ".length()).trim());
+
+                if(part != null) expandLines(engine, part, 0, part.size(), out);
+                else expandLines(engine, lines, i + 1, end, out);
+                i = end + 1;
+            }
+            else if(directive.startsWith("if ")) {
+                boolean taken = false;
+                String condition = directive.substring("if ".length());
+                int start = i;
+
+                while(true) {
+                    int end = blockEnd(lines, start, true);
+                    if(!taken && (condition == null || matches(engine, condition))) {
+                        expandLines(engine, lines, start + 1, end, out);
+                        taken = true;
+                    }
+
+                    String closing = directive(lines.get(end));
+                    if(closing.equals("end")) {
+                        i = end + 1;
+                        break;
+                    }
+                    condition = closing.startsWith("elif ") ? closing.substring("elif ".length()) : null;
+                    start = end;
+                }
+            }
+            else throw new IllegalStateException(engine.name + ": unexpected //#" + directive);
+        }
+    }
+
+    /******** Text *********/
+
+    static final String[] MACROS = { "$CMPKEY(", "$CMP(", "$KEYAT(" };
+
+    static String expandText(Engine engine, String line) {
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+
+        while(i < line.length()) {
+            if(line.startsWith("${", i)) {
+                int close = line.indexOf('}', i);
+                out.append(engine.value(line.substring(i + 2, close)));
+                i = close + 1;
+                continue;
+            }
+
+            String macro = null;
+            for(String name : MACROS) {
+                if(line.startsWith(name, i)) {
+                    macro = name;
+                    break;
+                }
+            }
+            if(macro == null) {
+                out.append(line.charAt(i++));
+                continue;
+            }
+
+            List<String> args = new ArrayList<>();
+            int depth = 0, argStart = i + macro.length(), j = argStart;
+            for(;; j++) {
+                char c = line.charAt(j);
+                if(c == '(' || c == '[') depth++;
+                else if((c == ')' || c == ']') && depth > 0) depth--;
+                else if(c == ',' && depth == 0) {
+                    args.add(expandText(engine, line.substring(argStart, j).trim()));
+                    argStart = j + 1;
+                }
+                else if(c == ')') break;
+            }
+            args.add(expandText(engine, line.substring(argStart, j).trim()));
+
+            out.append(expandMacro(engine, macro, args));
+            i = j + 1;
+        }
+        return out.toString();
+    }
+
+    // VALUE engines compare items by value, ${compare}(arr[a], arr[b]), and searches carry
+    // the key item itself; the others compare by position, grailCompare(arr, a, b), and
+    // searches carry the key's position.
+    static String expandMacro(Engine engine, String macro, List<String> args) {
+        boolean value = engine.flags.contains("VALUE");
+        int arity = macro.equals("$CMP(") ? 2 : 1;
+        if(args.size() != arity) throw new IllegalStateException(engine.name + ": " + macro + " takes " + arity + " arguments: " + args);
+
+        switch(macro) {
+        case "$CMP(":
+            return value ? engine.value("compare") + "(arr[" + args.get(0) + "], arr[" + args.get(1) + "])"
+                         : "grailCompare(arr, " + args.get(0) + ", " + args.get(1) + ")";
+        case "$CMPKEY(":
+            return value ? engine.value("compare") + "(arr[" + args.get(0) + "], key)"
+                         : "grailCompare(arr, " + args.get(0) + ", keyPos)";
+        default:
+            return value ? "arr[" + args.get(0) + "]" : args.get(0);
+        }
+    }
+
+    static String generate(Engine engine, List<String> template) {
+        List<String> out = new ArrayList<>();
+        expandLines(engine, template, 0, template.size(), out);
+
+        StringBuilder source = new StringBuilder();
+        for(String line : out) source.append(line).append('\n');
+        return source.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean check = args.length == 1 && args[0].equals("--check");
+        if(args.length != 0 && !check) {
+            System.err.println("usage: java codegen/GrailEngineGenerator.java [--check]");
+            System.exit(2);
+        }
+
+        List<String> template = Files.readAllLines(TEMPLATE, StandardCharsets.UTF_8);
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> dir = Files.newDirectoryStream(ENGINES, "*.engine")) {
+            for(Path file : dir) files.add(file);
+        }
+        files.sort(null);
+
+        int stale = 0;
+        for(Path file : files) {
+            Engine engine = readEngine(file);
+            String source = generate(engine, template);
+            Path target = OUTPUT.resolve(engine.name + ".java");
+
+            boolean current = Files.exists(target)
+                              && new String(Files.readAllBytes(target), StandardCharsets.UTF_8).equals(source);
+            if(current) continue;
+
+            stale++;
+            if(check) System.out.println(target + " is out of date");
+            else {
+                Files.write(target, source.getBytes(StandardCharsets.UTF_8));
+                System.out.println("wrote " + target);
+            }
+        }
+        if(check && stale != 0) System.exit(1);
+    }
+}
@@ -0,0 +1,91 @@
+package javagrailsort;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Java Flight Recorder events for instrumented sorts. This source set needs jdk.jfr
+// (JDK 11 or later) to compile, while the library itself builds with --release 8, so
+// GrailSortMetrics only loads this class by name. Without it on the classpath, or on
+// JVMs without Flight Recorder, instrumented sorts collect their metrics without events.
+final class GrailSortEvents implements GrailSortMetrics.Events {
+
+    GrailSortEvents() {
+        // fails here, while GrailSortMetrics loads it, if jdk.jfr is missing
+        new PhaseEvent();
+    }
+
+    @Name("javagrailsort.Sort")
+    @Label("Grail Sort")
+    @Category("Grail Sort")
+    @Description("One sort by an instrumented GrailSort")
+    static final class SortEvent extends Event {
+        @Label("Length")
+        int length;
+
+        @Label("Path")
+        String path;
+
+        @Label("Comparisons")
+        long comparisons;
+
+        @Label("Swaps")
+        long swaps;
+
+        @Label("Moves")
+        long moves;
+
+        @Label("Rotations")
+        long rotations;
+    }
+
+    @Name("javagrailsort.Phase")
+    @Label("Grail Sort Phase")
+    @Category("Grail Sort")
+    @Description("One phase of an instrumented sort")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Phase Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Override
+    public Object grailSortStarted(int len) {
+        SortEvent event = new SortEvent();
+        event.begin();
+        event.length = len;
+        return event;
+    }
+
+    @Override
+    public void grailSortEnded(Object sortEvent, GrailSortMetrics.Path path, long comparisons, long swaps, long moves,
+                               long rotations) {
+        SortEvent event = (SortEvent) sortEvent;
+        event.end();
+        if(!event.shouldCommit()) return;
+
+        event.path = path == null ? null : path.name();
+        event.comparisons = comparisons;
+        event.swaps = swaps;
+        event.moves = moves;
+        event.rotations = rotations;
+        event.commit();
+    }
+
+    // the phase has already been timed, so its event is committed after the fact
+    @Override
+    public void grailPhase(GrailSortMetrics.Phase phase, long start, long end) {
+        PhaseEvent event = new PhaseEvent();
+        if(!event.isEnabled()) return;
+
+        event.phase = phase.name();
+        event.nanos = end - start;
+        event.commit();
+    }
+}
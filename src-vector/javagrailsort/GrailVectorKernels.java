@@ -0,0 +1,479 @@
+package javagrailsort;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+// Bitonic sorting and merging kernels for IntGrailSort and LongGrailSort on the Vector
+// API. This source set needs jdk.incubator.vector (JDK 16 or later, run with
+// --add-modules jdk.incubator.vector) to compile and to load, while the library itself
+// builds with --release 8, so GrailSortingNetworks only loads this class by name.
+// Without it, the scalar network and the scalar merges are used.
+//
+// Inside a vector, one step of a bitonic network is a rearrange to each lane's partner,
+// a min, a max and a blend that keeps the max in the upper lane of each pair. Across
+// vectors it's a plain min and max. The sort kernel takes 1, 2 or 4 whole vectors;
+// masked loads and stores for the other lengths cost more than the scalar network
+// on JDK 17.
+//
+// Neither kernel keeps equal items in order, which only plain ints and longs can afford.
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class GrailVectorKernels implements GrailSortingNetworks.Kernels {
+
+    // at most 512 bits: a merge leaves up to 2 * lanes - 1 items to the scalar network,
+    // which takes 32
+    final private static VectorShape grailShape =
+            VectorShape.forBitSize(Math.min(VectorShape.preferredShape().vectorBitSize(), 512));
+
+    // both runs of a merge need this many vectors, or the scalar merge does it
+    final private static int grailMergeMinLen = 2;
+
+    GrailVectorKernels() {
+        // fails here, while GrailSortingNetworks loads it, on CPUs without vectors worth using
+        if(grailLongLanes < 2) throw new UnsupportedOperationException("vectors of " + grailShape.vectorBitSize() + " bits");
+    }
+
+    // at index t, lane i's partner i ^ 2^t, or i ^ (2^(t + 1) - 1) for mirrors
+    private static <E> VectorShuffle<E>[] grailShuffles(VectorSpecies<E> species, boolean mirrors) {
+        VectorShuffle<E>[] shuffles = new VectorShuffle[Integer.numberOfTrailingZeros(species.length())];
+        for(int t = 0; t < shuffles.length; t++) {
+            int mask = mirrors ? (2 << t) - 1 : 1 << t;
+            shuffles[t] = VectorShuffle.fromOp(species, i -> i ^ mask);
+        }
+        return shuffles;
+    }
+
+    private static <E> VectorMask<E>[] grailUppers(VectorSpecies<E> species) {
+        VectorMask<E>[] masks = new VectorMask[Integer.numberOfTrailingZeros(species.length())];
+        for(int t = 0; t < masks.length; t++) {
+            boolean[] uppers = new boolean[species.length()];
+            for(int i = 0; i < uppers.length; i++) uppers[i] = (i & (1 << t)) != 0;
+            masks[t] = VectorMask.fromArray(species, uppers, 0);
+        }
+        return masks;
+    }
+
+    /***** int[] *****/
+
+    final private static VectorSpecies<Integer> grailInts = IntVector.SPECIES_PREFERRED.withShape(grailShape);
+    final private static int grailIntLanes = grailInts.length();
+    final private static int grailIntLevels = Integer.numberOfTrailingZeros(grailIntLanes);
+
+    // at index t: lane i's partner i ^ 2^t, lane i's partner i ^ (2^(t + 1) - 1), the lanes i & 2^t
+    final private static VectorShuffle<Integer>[] grailIntSwaps = grailShuffles(grailInts, false);
+    final private static VectorShuffle<Integer>[] grailIntMirrors = grailShuffles(grailInts, true);
+    final private static VectorMask<Integer>[] grailIntUppers = grailUppers(grailInts);
+    final private static VectorShuffle<Integer> grailIntReverse = grailIntMirrors[grailIntLevels - 1];
+
+    private static IntVector grailStep(IntVector v, VectorShuffle<Integer> partners, VectorMask<Integer> uppers) {
+        IntVector w = v.rearrange(partners);
+        return v.min(w).blend(v.max(w), uppers);
+    }
+
+    // blocks of 2^(top + 1) lanes, each bitonic -> each sorted
+    private static IntVector grailClean(IntVector v, int top) {
+        for(int t = top; t >= 0; t--) {
+            v = grailStep(v, grailIntSwaps[t], grailIntUppers[t]);
+        }
+        return v;
+    }
+
+    private static IntVector grailSortLanes(IntVector v) {
+        for(int t = 0; t < grailIntLevels; t++) {
+            v = grailClean(grailStep(v, grailIntMirrors[t], grailIntUppers[t]), t - 1);
+        }
+        return v;
+    }
+
+    // The passes of the sorting network go through memory: a vector handed to a call that
+    // the JIT doesn't inline is boxed on the heap, and a whole network in one method is
+    // more than it inlines.
+    private static void grailSortLanes(int[] arr, int pos, int vectors) {
+        for(int i = 0; i < vectors; i++) {
+            int at = pos + i * grailIntLanes;
+            grailSortLanes(IntVector.fromArray(grailInts, arr, at)).intoArray(arr, at);
+        }
+    }
+
+    private static void grailCleanLanes(int[] arr, int pos, int vectors) {
+        for(int i = 0; i < vectors; i++) {
+            int at = pos + i * grailIntLanes;
+            grailClean(IntVector.fromArray(grailInts, arr, at), grailIntLevels - 1).intoArray(arr, at);
+        }
+    }
+
+    // vector i of each group of 2 * run vectors against vector 2 * run - 1 - i, reversed
+    private static void grailMirror(int[] arr, int pos, int vectors, int run) {
+        for(int group = 0; group < vectors; group += 2 * run) {
+            for(int i = 0; i < run; i++) {
+                int low = pos + (group + i) * grailIntLanes;
+                int high = pos + (group + 2 * run - 1 - i) * grailIntLanes;
+
+                IntVector a = IntVector.fromArray(grailInts, arr, low);
+                IntVector b = IntVector.fromArray(grailInts, arr, high).rearrange(grailIntReverse);
+                a.min(b).intoArray(arr, low);
+                a.max(b).rearrange(grailIntReverse).intoArray(arr, high);
+            }
+        }
+    }
+
+    // vector i of each group of 2 * dist vectors against vector i + dist
+    private static void grailHalfClean(int[] arr, int pos, int vectors, int dist) {
+        for(int group = 0; group < vectors; group += 2 * dist) {
+            for(int i = 0; i < dist; i++) {
+                int low = pos + (group + i) * grailIntLanes, high = low + dist * grailIntLanes;
+
+                IntVector a = IntVector.fromArray(grailInts, arr, low);
+                IntVector b = IntVector.fromArray(grailInts, arr, high);
+                a.min(b).intoArray(arr, low);
+                a.max(b).intoArray(arr, high);
+            }
+        }
+    }
+
+    @Override
+    public boolean grailSort(int[] arr, int pos, int len) {
+        int vectors = len / grailIntLanes;
+        if(vectors == 0 || len % grailIntLanes != 0 || (vectors & (vectors - 1)) != 0) return false;
+
+        grailSortLanes(arr, pos, vectors);
+        for(int run = 1; run < vectors; run *= 2) {
+            grailMirror(arr, pos, vectors, run);
+            for(int dist = run / 2; dist >= 1; dist /= 2) {
+                grailHalfClean(arr, pos, vectors, dist);
+            }
+            grailCleanLanes(arr, pos, vectors);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean grailMergeWithExtBuf(int[] arr, int pos, int len1, int len2, int[] buffer, int bufferPos) {
+        if(len1 < grailMergeMinLen * grailIntLanes || len2 < grailMergeMinLen * grailIntLanes) return false;
+
+        if(len1 <= len2) grailMergeForward(arr, pos, len1, len2, buffer, bufferPos);
+        else grailMergeBackward(arr, pos, len1, len2, buffer, bufferPos);
+        return true;
+    }
+
+    // Merges a vector at a time: the next vector comes from the run with the smaller
+    // head, is merged with the lanes carried over from the last step, and the lower half
+    // is written out. When a run has less than a vector left, the carried lanes go back
+    // in front of it, in the space of the last vector taken from it, and the merge ends
+    // one item at a time.
+    private static void grailMergeForward(int[] arr, int pos, int len1, int len2, int[] buffer, int bufferPos) {
+        int lanes = grailIntLanes;
+        System.arraycopy(arr, pos, buffer, bufferPos, len1);
+
+        int left = bufferPos + lanes, leftEnd = bufferPos + len1;
+        int right = pos + len1 + lanes, rightEnd = pos + len1 + len2;
+        int dist = pos;
+
+        IntVector carry = IntVector.fromArray(grailInts, buffer, bufferPos);
+        int[] nextRun = arr;
+        int next = pos + len1;
+        while(true) {
+            IntVector reversed = IntVector.fromArray(grailInts, nextRun, next).rearrange(grailIntReverse);
+            grailClean(carry.min(reversed), grailIntLevels - 1).intoArray(arr, dist);
+            carry = grailClean(carry.max(reversed), grailIntLevels - 1);
+            dist += lanes;
+
+            if(left + lanes > leftEnd || right + lanes > rightEnd) break;
+
+            if(buffer[left] > arr[right]) {
+                nextRun = arr;
+                next = right;
+                right += lanes;
+            }
+            else {
+                nextRun = buffer;
+                next = left;
+                left += lanes;
+            }
+        }
+
+        if(left + lanes > leftEnd) {
+            left -= lanes;
+            carry.intoArray(buffer, left);
+            GrailSortingNetworks.grailNetworkSort(buffer, left, leftEnd - left);
+        }
+        else {
+            right -= lanes;
+            carry.intoArray(arr, right);
+            GrailSortingNetworks.grailNetworkSort(arr, right, rightEnd - right);
+        }
+        grailMergeForwardRest(arr, buffer, left, leftEnd, right, rightEnd, dist);
+    }
+
+    // the scalar end, in a method of its own so that the vector loop stays small enough to inline
+    private static void grailMergeForwardRest(int[] arr, int[] buffer, int left, int leftEnd, int right, int rightEnd, int dist) {
+        while(left < leftEnd && right < rightEnd) {
+            if(buffer[left] > arr[right]) {
+                arr[dist++] = arr[right++];
+            }
+            else arr[dist++] = buffer[left++];
+        }
+        if(left < leftEnd) System.arraycopy(buffer, left, arr, dist, leftEnd - left);
+    }
+
+    // the same from the ends of the runs, with the upper half written out; run ends and
+    // mergedEnd are exclusive
+    private static void grailMergeBackward(int[] arr, int pos, int len1, int len2, int[] buffer, int bufferPos) {
+        int lanes = grailIntLanes;
+        System.arraycopy(arr, pos + len1, buffer, bufferPos, len2);
+
+        int left = pos + len1 - lanes, right = bufferPos + len2 - lanes;
+        int mergedEnd = pos + len1 + len2;
+
+        IntVector carry = IntVector.fromArray(grailInts, buffer, right);
+        int[] nextRun = arr;
+        int next = left;
+        while(true) {
+            IntVector reversed = IntVector.fromArray(grailInts, nextRun, next).rearrange(grailIntReverse);
+            mergedEnd -= lanes;
+            grailClean(carry.max(reversed), grailIntLevels - 1).intoArray(arr, mergedEnd);
+            carry = grailClean(carry.min(reversed), grailIntLevels - 1);
+
+            if(left - lanes < pos || right - lanes < bufferPos) break;
+
+            if(arr[left - 1] > buffer[right - 1]) {
+                left -= lanes;
+                nextRun = arr;
+                next = left;
+            }
+            else {
+                right -= lanes;
+                nextRun = buffer;
+                next = right;
+            }
+        }
+
+        if(left - lanes < pos) {
+            carry.intoArray(arr, left);
+            left += lanes;
+            GrailSortingNetworks.grailNetworkSort(arr, pos, left - pos);
+        }
+        else {
+            carry.intoArray(buffer, right);
+            right += lanes;
+            GrailSortingNetworks.grailNetworkSort(buffer, bufferPos, right - bufferPos);
+        }
+        grailMergeBackwardRest(arr, pos, left, buffer, bufferPos, right, mergedEnd);
+    }
+
+    private static void grailMergeBackwardRest(int[] arr, int pos, int left, int[] buffer, int bufferPos, int right, int mergedEnd) {
+        while(left > pos && right > bufferPos) {
+            if(arr[left - 1] > buffer[right - 1]) {
+                arr[--mergedEnd] = arr[--left];
+            }
+            else arr[--mergedEnd] = buffer[--right];
+        }
+        if(right > bufferPos) System.arraycopy(buffer, bufferPos, arr, pos, right - bufferPos);
+    }
+
+    /***** long[] *****/
+
+    final private static VectorSpecies<Long> grailLongs = LongVector.SPECIES_PREFERRED.withShape(grailShape);
+    final private static int grailLongLanes = grailLongs.length();
+    final private static int grailLongLevels = Integer.numberOfTrailingZeros(grailLongLanes);
+
+    final private static VectorShuffle<Long>[] grailLongSwaps = grailShuffles(grailLongs, false);
+    final private static VectorShuffle<Long>[] grailLongMirrors = grailShuffles(grailLongs, true);
+    final private static VectorMask<Long>[] grailLongUppers = grailUppers(grailLongs);
+    final private static VectorShuffle<Long> grailLongReverse = grailLongMirrors[grailLongLevels - 1];
+
+    private static LongVector grailStep(LongVector v, VectorShuffle<Long> partners, VectorMask<Long> uppers) {
+        LongVector w = v.rearrange(partners);
+        return v.min(w).blend(v.max(w), uppers);
+    }
+
+    private static LongVector grailClean(LongVector v, int top) {
+        for(int t = top; t >= 0; t--) {
+            v = grailStep(v, grailLongSwaps[t], grailLongUppers[t]);
+        }
+        return v;
+    }
+
+    private static LongVector grailSortLanes(LongVector v) {
+        for(int t = 0; t < grailLongLevels; t++) {
+            v = grailClean(grailStep(v, grailLongMirrors[t], grailLongUppers[t]), t - 1);
+        }
+        return v;
+    }
+
+    private static void grailSortLanes(long[] arr, int pos, int vectors) {
+        for(int i = 0; i < vectors; i++) {
+            int at = pos + i * grailLongLanes;
+            grailSortLanes(LongVector.fromArray(grailLongs, arr, at)).intoArray(arr, at);
+        }
+    }
+
+    private static void grailCleanLanes(long[] arr, int pos, int vectors) {
+        for(int i = 0; i < vectors; i++) {
+            int at = pos + i * grailLongLanes;
+            grailClean(LongVector.fromArray(grailLongs, arr, at), grailLongLevels - 1).intoArray(arr, at);
+        }
+    }
+
+    private static void grailMirror(long[] arr, int pos, int vectors, int run) {
+        for(int group = 0; group < vectors; group += 2 * run) {
+            for(int i = 0; i < run; i++) {
+                int low = pos + (group + i) * grailLongLanes;
+                int high = pos + (group + 2 * run - 1 - i) * grailLongLanes;
+
+                LongVector a = LongVector.fromArray(grailLongs, arr, low);
+                LongVector b = LongVector.fromArray(grailLongs, arr, high).rearrange(grailLongReverse);
+                a.min(b).intoArray(arr, low);
+                a.max(b).rearrange(grailLongReverse).intoArray(arr, high);
+            }
+        }
+    }
+
+    private static void grailHalfClean(long[] arr, int pos, int vectors, int dist) {
+        for(int group = 0; group < vectors; group += 2 * dist) {
+            for(int i = 0; i < dist; i++) {
+                int low = pos + (group + i) * grailLongLanes, high = low + dist * grailLongLanes;
+
+                LongVector a = LongVector.fromArray(grailLongs, arr, low);
+                LongVector b = LongVector.fromArray(grailLongs, arr, high);
+                a.min(b).intoArray(arr, low);
+                a.max(b).intoArray(arr, high);
+            }
+        }
+    }
+
+    @Override
+    public boolean grailSort(long[] arr, int pos, int len) {
+        int vectors = len / grailLongLanes;
+        if(vectors == 0 || len % grailLongLanes != 0 || (vectors & (vectors - 1)) != 0) return false;
+
+        grailSortLanes(arr, pos, vectors);
+        for(int run = 1; run < vectors; run *= 2) {
+            grailMirror(arr, pos, vectors, run);
+            for(int dist = run / 2; dist >= 1; dist /= 2) {
+                grailHalfClean(arr, pos, vectors, dist);
+            }
+            grailCleanLanes(arr, pos, vectors);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean grailMergeWithExtBuf(long[] arr, int pos, int len1, int len2, long[] buffer, int bufferPos) {
+        if(len1 < grailMergeMinLen * grailLongLanes || len2 < grailMergeMinLen * grailLongLanes) return false;
+
+        if(len1 <= len2) grailMergeForward(arr, pos, len1, len2, buffer, bufferPos);
+        else grailMergeBackward(arr, pos, len1, len2, buffer, bufferPos);
+        return true;
+    }
+
+    private static void grailMergeForward(long[] arr, int pos, int len1, int len2, long[] buffer, int bufferPos) {
+        int lanes = grailLongLanes;
+        System.arraycopy(arr, pos, buffer, bufferPos, len1);
+
+        int left = bufferPos + lanes, leftEnd = bufferPos + len1;
+        int right = pos + len1 + lanes, rightEnd = pos + len1 + len2;
+        int dist = pos;
+
+        LongVector carry = LongVector.fromArray(grailLongs, buffer, bufferPos);
+        long[] nextRun = arr;
+        int next = pos + len1;
+        while(true) {
+            LongVector reversed = LongVector.fromArray(grailLongs, nextRun, next).rearrange(grailLongReverse);
+            grailClean(carry.min(reversed), grailLongLevels - 1).intoArray(arr, dist);
+            carry = grailClean(carry.max(reversed), grailLongLevels - 1);
+            dist += lanes;
+
+            if(left + lanes > leftEnd || right + lanes > rightEnd) break;
+
+            if(buffer[left] > arr[right]) {
+                nextRun = arr;
+                next = right;
+                right += lanes;
+            }
+            else {
+                nextRun = buffer;
+                next = left;
+                left += lanes;
+            }
+        }
+
+        if(left + lanes > leftEnd) {
+            left -= lanes;
+            carry.intoArray(buffer, left);
+            GrailSortingNetworks.grailNetworkSort(buffer, left, leftEnd - left);
+        }
+        else {
+            right -= lanes;
+            carry.intoArray(arr, right);
+            GrailSortingNetworks.grailNetworkSort(arr, right, rightEnd - right);
+        }
+        grailMergeForwardRest(arr, buffer, left, leftEnd, right, rightEnd, dist);
+    }
+
+    private static void grailMergeForwardRest(long[] arr, long[] buffer, int left, int leftEnd, int right, int rightEnd, int dist) {
+        while(left < leftEnd && right < rightEnd) {
+            if(buffer[left] > arr[right]) {
+                arr[dist++] = arr[right++];
+            }
+            else arr[dist++] = buffer[left++];
+        }
+        if(left < leftEnd) System.arraycopy(buffer, left, arr, dist, leftEnd - left);
+    }
+
+    private static void grailMergeBackward(long[] arr, int pos, int len1, int len2, long[] buffer, int bufferPos) {
+        int lanes = grailLongLanes;
+        System.arraycopy(arr, pos + len1, buffer, bufferPos, len2);
+
+        int left = pos + len1 - lanes, right = bufferPos + len2 - lanes;
+        int mergedEnd = pos + len1 + len2;
+
+        LongVector carry = LongVector.fromArray(grailLongs, buffer, right);
+        long[] nextRun = arr;
+        int next = left;
+        while(true) {
+            LongVector reversed = LongVector.fromArray(grailLongs, nextRun, next).rearrange(grailLongReverse);
+            mergedEnd -= lanes;
+            grailClean(carry.max(reversed), grailLongLevels - 1).intoArray(arr, mergedEnd);
+            carry = grailClean(carry.min(reversed), grailLongLevels - 1);
+
+            if(left - lanes < pos || right - lanes < bufferPos) break;
+
+            if(arr[left - 1] > buffer[right - 1]) {
+                left -= lanes;
+                nextRun = arr;
+                next = left;
+            }
+            else {
+                right -= lanes;
+                nextRun = buffer;
+                next = right;
+            }
+        }
+
+        if(left - lanes < pos) {
+            carry.intoArray(arr, left);
+            left += lanes;
+            GrailSortingNetworks.grailNetworkSort(arr, pos, left - pos);
+        }
+        else {
+            carry.intoArray(buffer, right);
+            right += lanes;
+            GrailSortingNetworks.grailNetworkSort(buffer, bufferPos, right - bufferPos);
+        }
+        grailMergeBackwardRest(arr, pos, left, buffer, bufferPos, right, mergedEnd);
+    }
+
+    private static void grailMergeBackwardRest(long[] arr, int pos, int left, long[] buffer, int bufferPos, int right, int mergedEnd) {
+        while(left > pos && right > bufferPos) {
+            if(arr[left - 1] > buffer[right - 1]) {
+                arr[--mergedEnd] = arr[--left];
+            }
+            else arr[--mergedEnd] = buffer[--right];
+        }
+        if(right > bufferPos) System.arraycopy(buffer, bufferPos, arr, pos, right - bufferPos);
+    }
+}
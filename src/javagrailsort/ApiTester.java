@@ -0,0 +1,1249 @@
+package javagrailsort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/********* Grail sorting API checks **********************/
+/*                                                       */
+/* Tester times the Comparator sorts on one large input; */
+/* this harness instead runs every public entry point    */
+/* once per buffer mode on small inputs of many shapes   */
+/* and checks that the result is sorted and stable:      */
+/*                                                       */
+/* - lengths around the insertion sort cutoff, the       */
+/*   static buffer and a few block sizes;                */
+/* - 1 to 4 distinct keys (the few keys sort), about     */
+/*   sqrt(n) keys and distinct keys;                     */
+/* - whole arrays and fromIndex/toIndex ranges, where    */
+/*   the items outside the range must not move.          */
+/*                                                       */
+/* Every item carries its original position, so a sort   */
+/* that loses, duplicates or reorders equal items fails. */
+/* The first failure is printed and exits with 1.        */
+/*                                                       */
+/*********************************************************/
+
+public class ApiTester {
+
+    final private static int[] grailLengths = { 0, 1, 2, 17, 33, 100, 513, 4099, 20001 };
+    final private static int[] grailKeyCounts = { 1, 2, 3, 4, -1, 0 };
+
+    private int seed;
+    private int checks;
+
+    public ApiTester() {
+        this.seed = 100000001;
+    }
+
+    // Tester's generator, with the product taken in 64 bits so that it spans [0, k)
+    private int randomNumber(int k) {
+        this.seed = (this.seed * 1234565) + 1;
+        return (int) (((this.seed & 0x7fffffff) * (long) k) >>> 31);
+    }
+
+    // keyCount > 0: that many distinct keys; -1: about sqrt(len) keys; 0: random keys
+    private int[] generateKeys(int len, int keyCount) {
+        int bound = keyCount > 0 ? keyCount
+                  : keyCount < 0 ? (int) Math.sqrt(len) + 1
+                  : 1000000000;
+
+        int[] keys = new int[len];
+        for(int i = 0; i < len; i++) keys[i] = randomNumber(bound) - bound / 2;
+        return keys;
+    }
+
+    private void check(boolean sorted, String name) {
+        if(!sorted) {
+            System.out.println(name + " DID NOT sort successfully.");
+            System.exit(1);
+        }
+        this.checks++;
+    }
+
+    /******** Objects *********/
+
+    // the value of each object is its original position
+    private static SortType[] newObjects(int[] keys) {
+        SortType[] arr = new SortType[keys.length];
+        for(int i = 0; i < keys.length; i++) arr[i] = new SortType(keys[i], i);
+        return arr;
+    }
+
+    private static boolean testObjects(SortType[] arr, int[] keys, int from, int to) {
+        boolean[] seen = new boolean[keys.length];
+        for(int i = 0; i < arr.length; i++) {
+            int index = arr[i].value;
+            if(index < 0 || index >= keys.length || seen[index] || arr[i].key != keys[index]) return false;
+            seen[index] = true;
+
+            if((i < from || i >= to) && index != i) return false;
+            if(i > from && i < to) {
+                int dk = Integer.compare(arr[i - 1].key, arr[i].key);
+                if(dk > 0 || (dk == 0 && arr[i - 1].value > index)) return false;
+            }
+        }
+        return true;
+    }
+
+    // Comparators may return any int, not just -1, 0 and 1; this one returns the
+    // extremes, where a merge that subtracts from the result overflows.
+    private void testExtremeComparator() {
+        Comparator<SortType> extreme = (a, b) -> a.key < b.key ? Integer.MIN_VALUE : a.key > b.key ? Integer.MAX_VALUE : 0;
+        GrailSort<SortType> sorter = new GrailSort<>(extreme);
+
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+                String name = " (" + len + " items, " + keyCount + " keys, extreme comparator)";
+
+                for(int mode = 0; mode < 4; mode++) {
+                    SortType[] whole = newObjects(keys), range = newObjects(keys);
+                    switch(mode) {
+                    case 0:
+                        sorter.grailSortWithoutBuffer(whole);
+                        sorter.grailSortWithoutBuffer(range, from, to);
+                        break;
+                    case 1:
+                        sorter.grailSortWithBuffer(whole);
+                        sorter.grailSortWithBuffer(range, from, to);
+                        break;
+                    case 2:
+                        sorter.grailSortWithDynBuffer(whole);
+                        sorter.grailSortWithDynBuffer(range, from, to);
+                        break;
+                    default:
+                        sorter.grailSortAdaptive(whole);
+                        sorter.grailSortAdaptive(range, from, to);
+                    }
+                    check(testObjects(whole, keys, 0, len), "GrailSort mode " + mode + name);
+                    check(testObjects(range, keys, from, to), "GrailSort mode " + mode + " range" + name);
+                }
+
+                SortType[] arr = newObjects(keys);
+                int[] order = GrailArgSort.grailArgSort(arr, from, to, extreme);
+                SortType[] sorted = newObjects(keys);
+                for(int i = 0; i < order.length; i++) sorted[from + i] = arr[order[i]];
+                check(testObjects(sorted, keys, from, to), "GrailArgSort" + name);
+            }
+        }
+        System.out.println("GrailSort and GrailArgSort with an extreme comparator sorted successfully.");
+    }
+
+    // GrailSort.sort, by natural order, by a Comparator and by a null Comparator,
+    // which also means natural order
+    private void testOneOffSorts() {
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+                String name = " (" + len + " items, " + keyCount + " keys)";
+
+                SortType[] natural = newObjects(keys), byComparator = newObjects(keys), byNull = newObjects(keys);
+                GrailSort.sort(natural, from, to);
+                GrailSort.sort(byComparator, from, to, new SortComparator());
+                GrailSort.sort(byNull, from, to, null);
+                check(testObjects(natural, keys, from, to), "GrailSort.sort range" + name);
+                check(testObjects(byComparator, keys, from, to), "GrailSort.sort range with a Comparator" + name);
+                check(testObjects(byNull, keys, from, to), "GrailSort.sort range with a null Comparator" + name);
+
+                SortType[] whole = newObjects(keys);
+                GrailSort.sort(whole);
+                check(testObjects(whole, keys, 0, len), "GrailSort.sort" + name);
+            }
+        }
+
+        // bad ranges are rejected like Arrays.sort rejects them, before anything moves
+        int[] keys = generateKeys(100, 0);
+        int[][] badRanges = { { 60, 40 }, { -1, 50 }, { 50, 101 } };
+        for(int[] range : badRanges) {
+            SortType[] arr = newObjects(keys);
+            int[] ints = keys.clone();
+            String name = " [" + range[0] + ", " + range[1] + ")";
+
+            check(rejectsRange(() -> GrailSort.sort(arr, range[0], range[1]), range), "GrailSort.sort" + name);
+            check(rejectsRange(() -> IntGrailSort.grailSortWithBuffer(ints, range[0], range[1]), range), "IntGrailSort" + name);
+            check(testObjects(arr, keys, 0, 0) && Arrays.equals(ints, keys), "bad range" + name + " left the array alone");
+        }
+        System.out.println("GrailSort.sort sorted successfully.");
+    }
+
+    // Scratch arrays and budgets from none at all, through a few items and the dynamic
+    // buffer's size, to more than the sort can use (half the range).
+    private static int[] bufferLens(int len) {
+        return new int[] { 0, 1, 5, GrailSort.grailDynBufferLen(len), len / 8, len + 3 };
+    }
+
+    private void testBufferedSorts() {
+        GrailSort<SortType> sorter = new GrailSort<>(new SortComparator());
+
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+
+                for(int bufferLen : bufferLens(len)) {
+                    String name = " (" + len + " items, " + keyCount + " keys, " + bufferLen + " item buffer)";
+                    SortType[] scratch = new SortType[bufferLen];
+
+                    SortType[] whole = newObjects(keys), range = newObjects(keys);
+                    sorter.grailSortWithScratch(whole, scratch);
+                    GrailSort.grailSortWithScratch(range, from, to, scratch, new SortComparator());
+                    check(testObjects(whole, keys, 0, len), "grailSortWithScratch" + name);
+                    check(testObjects(range, keys, from, to), "grailSortWithScratch range" + name);
+
+                    whole = newObjects(keys);
+                    range = newObjects(keys);
+                    GrailSort.grailSortWithBudget(whole, bufferLen, new SortComparator());
+                    sorter.grailSortWithBudget(range, from, to, bufferLen);
+                    check(testObjects(whole, keys, 0, len), "grailSortWithBudget" + name);
+                    check(testObjects(range, keys, from, to), "grailSortWithBudget range" + name);
+
+                    testPrimitiveBuffers(keys, from, to, bufferLen, name);
+                }
+            }
+        }
+
+        boolean rejected = false;
+        try {
+            sorter.grailSortWithBudget(newObjects(generateKeys(100, 0)), -1);
+        }
+        catch(IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected, "grailSortWithBudget with a negative budget");
+
+        System.out.println("grailSortWithScratch and grailSortWithBudget sorted successfully.");
+    }
+
+    // scratch sorts of the whole array and budget sorts of the range
+    private void testPrimitiveBuffers(int[] keys, int from, int to, int bufferLen, String name) {
+        int len = keys.length;
+        int[] ints = keys.clone(), intRange = keys.clone();
+        long[] longs = longValues(keys), longRange = longs.clone();
+        float[] floats = floatValues(keys), floatRange = floats.clone();
+        double[] doubles = doubleValues(keys), doubleRange = doubles.clone();
+
+        IntGrailSort.grailSortWithScratch(ints, new int[bufferLen]);
+        LongGrailSort.grailSortWithScratch(longs, new long[bufferLen]);
+        FloatGrailSort.grailSortWithScratch(floats, new float[bufferLen]);
+        DoubleGrailSort.grailSortWithScratch(doubles, new double[bufferLen]);
+        IntGrailSort.grailSortWithBudget(intRange, from, to, bufferLen);
+        LongGrailSort.grailSortWithBudget(longRange, from, to, bufferLen);
+        FloatGrailSort.grailSortWithBudget(floatRange, from, to, bufferLen);
+        DoubleGrailSort.grailSortWithBudget(doubleRange, from, to, bufferLen);
+
+        check(Arrays.equals(ints, sortedCopy(keys, 0, len)), "IntGrailSort.grailSortWithScratch" + name);
+        check(Arrays.equals(longs, sortedCopy(longValues(keys), 0, len)), "LongGrailSort.grailSortWithScratch" + name);
+        check(Arrays.equals(floats, sortedCopy(floatValues(keys), 0, len)), "FloatGrailSort.grailSortWithScratch" + name);
+        check(Arrays.equals(doubles, sortedCopy(doubleValues(keys), 0, len)), "DoubleGrailSort.grailSortWithScratch" + name);
+        check(Arrays.equals(intRange, sortedCopy(keys, from, to)), "IntGrailSort.grailSortWithBudget range" + name);
+        check(Arrays.equals(longRange, sortedCopy(longValues(keys), from, to)), "LongGrailSort.grailSortWithBudget range" + name);
+        check(Arrays.equals(floatRange, sortedCopy(floatValues(keys), from, to)), "FloatGrailSort.grailSortWithBudget range" + name);
+        check(Arrays.equals(doubleRange, sortedCopy(doubleValues(keys), from, to)), "DoubleGrailSort.grailSortWithBudget range" + name);
+    }
+
+    // fromIndex > toIndex is an IllegalArgumentException, an index outside the array
+    // an ArrayIndexOutOfBoundsException
+    private static boolean rejectsRange(Runnable sort, int[] range) {
+        try {
+            sort.run();
+        }
+        catch(IllegalArgumentException e) {
+            return range[0] > range[1];
+        }
+        catch(ArrayIndexOutOfBoundsException e) {
+            return range[0] <= range[1];
+        }
+        return false;
+    }
+
+    // The long key spreads the int key over the whole long range, in the same order.
+    private void testKeyedSorts() {
+        ToIntFunction<SortType> intKey = item -> item.key;
+        ToLongFunction<SortType> longKey = item -> item.key * 3000000019L;
+
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+                String name = " (" + len + " items, " + keyCount + " keys)";
+
+                for(int mode = 0; mode < 4; mode++) {
+                    SortType[] ints = newObjects(keys), intRange = newObjects(keys);
+                    SortType[] longs = newObjects(keys), longRange = newObjects(keys);
+                    switch(mode) {
+                    case 0:
+                        IntKeyedGrailSort.grailSortWithoutBuffer(ints, intKey);
+                        IntKeyedGrailSort.grailSortWithoutBuffer(intRange, from, to, intKey);
+                        LongKeyedGrailSort.grailSortWithoutBuffer(longs, longKey);
+                        LongKeyedGrailSort.grailSortWithoutBuffer(longRange, from, to, longKey);
+                        break;
+                    case 1:
+                        IntKeyedGrailSort.grailSortWithBuffer(ints, intKey);
+                        IntKeyedGrailSort.grailSortWithBuffer(intRange, from, to, intKey);
+                        LongKeyedGrailSort.grailSortWithBuffer(longs, longKey);
+                        LongKeyedGrailSort.grailSortWithBuffer(longRange, from, to, longKey);
+                        break;
+                    case 2:
+                        IntKeyedGrailSort.grailSortWithDynBuffer(ints, intKey);
+                        IntKeyedGrailSort.grailSortWithDynBuffer(intRange, from, to, intKey);
+                        LongKeyedGrailSort.grailSortWithDynBuffer(longs, longKey);
+                        LongKeyedGrailSort.grailSortWithDynBuffer(longRange, from, to, longKey);
+                        break;
+                    default:
+                        IntKeyedGrailSort.grailSortAdaptive(ints, intKey);
+                        IntKeyedGrailSort.grailSortAdaptive(intRange, from, to, intKey);
+                        LongKeyedGrailSort.grailSortAdaptive(longs, longKey);
+                        LongKeyedGrailSort.grailSortAdaptive(longRange, from, to, longKey);
+                    }
+                    check(testObjects(ints, keys, 0, len), "IntKeyedGrailSort mode " + mode + name);
+                    check(testObjects(intRange, keys, from, to), "IntKeyedGrailSort mode " + mode + " range" + name);
+                    check(testObjects(longs, keys, 0, len), "LongKeyedGrailSort mode " + mode + name);
+                    check(testObjects(longRange, keys, from, to), "LongKeyedGrailSort mode " + mode + " range" + name);
+                }
+            }
+        }
+        System.out.println("IntKeyedGrailSort and LongKeyedGrailSort sorted successfully.");
+    }
+
+    // positions[from, to - 1] must be a stable order of keys[from, to - 1], the rest unmoved
+    private static boolean testOrder(int[] positions, int[] keys, int from, int to) {
+        boolean[] seen = new boolean[keys.length];
+        for(int i = 0; i < positions.length; i++) {
+            int index = positions[i];
+            if(index < 0 || index >= keys.length || seen[index]) return false;
+            seen[index] = true;
+
+            if((i < from || i >= to) && index != i) return false;
+            if(i > from && i < to) {
+                int dk = Integer.compare(keys[positions[i - 1]], keys[index]);
+                if(dk > 0 || (dk == 0 && positions[i - 1] > index)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] identity(int len) {
+        int[] positions = new int[len];
+        for(int i = 0; i < len; i++) positions[i] = i;
+        return positions;
+    }
+
+    // An argsort of a range is checked by applying it: to the objects themselves, and to
+    // the positions, ints, longs, floats and doubles of parallel arrays.
+    private void testArgSorts() {
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+                String name = " (" + len + " items, " + keyCount + " keys)";
+
+                SortType[] whole = newObjects(keys);
+                int[] perm = GrailArgSort.grailArgSort(whole, new SortComparator());
+                check(testObjects(whole, keys, 0, 0), "GrailArgSort left the objects alone" + name);
+                GrailArgSort.grailApplyPermutation(whole, perm);
+                check(testObjects(whole, keys, 0, len), "GrailArgSort" + name);
+
+                SortType[] range = newObjects(keys);
+                perm = GrailArgSort.grailArgSort(range, from, to, new SortComparator());
+                int[] permCopy = perm.clone();
+                GrailArgSort.grailApplyPermutation(range, from, perm);
+                check(testObjects(range, keys, from, to), "GrailArgSort range" + name);
+                check(Arrays.equals(perm, permCopy), "grailApplyPermutation left the permutation alone" + name);
+
+                long[] longKeys = longValues(keys);
+                check(Arrays.equals(GrailArgSort.grailArgSort(keys, from, to), perm), "GrailArgSort of int keys" + name);
+                check(Arrays.equals(GrailArgSort.grailArgSort(longKeys, from, to), perm), "GrailArgSort of long keys" + name);
+                check(testOrder(applied(GrailArgSort.grailArgSort(keys)), keys, 0, len), "GrailArgSort of int keys, whole" + name);
+                check(testOrder(applied(GrailArgSort.grailArgSort(longKeys)), keys, 0, len), "GrailArgSort of long keys, whole" + name);
+
+                int[] positions = identity(len), ints = keys.clone();
+                long[] longs = longValues(keys);
+                float[] floats = floatValues(keys);
+                double[] doubles = doubleValues(keys);
+                GrailArgSort.grailApplyPermutation(positions, from, perm);
+                GrailArgSort.grailApplyPermutation(ints, from, perm);
+                GrailArgSort.grailApplyPermutation(longs, from, perm);
+                GrailArgSort.grailApplyPermutation(floats, from, perm);
+                GrailArgSort.grailApplyPermutation(doubles, from, perm);
+                check(testOrder(positions, keys, from, to), "grailApplyPermutation of positions" + name);
+
+                // the other arrays must have moved the same way as the positions
+                boolean moved = true;
+                for(int i = 0; i < len; i++) {
+                    int index = positions[i];
+                    moved &= ints[i] == keys[index] && longs[i] == longKeys[index]
+                             && Float.floatToIntBits(floats[i]) == Float.floatToIntBits((float) doubleValue(keys[index]))
+                             && Double.doubleToLongBits(doubles[i]) == Double.doubleToLongBits(doubleValue(keys[index]));
+                }
+                check(moved, "grailApplyPermutation of ints, longs, floats and doubles" + name);
+
+                // indices needn't cover arr or be distinct: every third position, wrapping
+                // around, repeats positions when len is a multiple of 3
+                SortType[] arr = newObjects(keys);
+                int[] indices = new int[len];
+                for(int i = 0; i < len; i++) indices[i] = (i * 3) % len;
+                int[] sortedIndices = indices.clone();
+                GrailArgSort.grailSortIndices(sortedIndices, arr, new SortComparator());
+                check(testIndices(sortedIndices, indices, keys, 0, indices.length), "grailSortIndices" + name);
+
+                sortedIndices = indices.clone();
+                int indexFrom = indices.length / 5, indexTo = indices.length - indices.length / 7;
+                GrailArgSort.grailSortIndices(sortedIndices, indexFrom, indexTo, arr, new SortComparator());
+                check(testIndices(sortedIndices, indices, keys, indexFrom, indexTo), "grailSortIndices range" + name);
+                check(testObjects(arr, keys, 0, 0), "grailSortIndices left the objects alone" + name);
+            }
+        }
+
+        // a permutation that repeats a position is rejected, and nothing is changed
+        int[] keys = generateKeys(10, 0);
+        SortType[] arr = newObjects(keys);
+        int[] bad = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 8 };
+        boolean rejected = false;
+        try {
+            GrailArgSort.grailApplyPermutation(arr, bad);
+        }
+        catch(IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected && Arrays.equals(bad, new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 8 }) && testObjects(arr, keys, 0, 0),
+              "grailApplyPermutation of a bad permutation");
+
+        System.out.println("GrailArgSort sorted successfully.");
+    }
+
+    private static int[] applied(int[] perm) {
+        int[] positions = identity(perm.length);
+        GrailArgSort.grailApplyPermutation(positions, perm);
+        return positions;
+    }
+
+    // sorted[from, to - 1] must be original[from, to - 1] stably ordered by key, as multisets
+    private static boolean testIndices(int[] sorted, int[] original, int[] keys, int from, int to) {
+        for(int i = 0; i < original.length; i++) {
+            if((i < from || i >= to) && sorted[i] != original[i]) return false;
+        }
+        // Arrays.sort of objects is stable too
+        Integer[] expected = new Integer[to - from];
+        for(int i = 0; i < expected.length; i++) expected[i] = original[from + i];
+        Arrays.sort(expected, Comparator.comparingInt(index -> keys[index]));
+
+        for(int i = 0; i < expected.length; i++) {
+            if(sorted[from + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    // Keys share a 20 char prefix, some are prefixes of others ("/2" and "/20"), and
+    // some end in chars past 0x7f: an accented letter, and a surrogate pair that
+    // String.compareTo orders by its UTF-16 units. Distinct ints give distinct keys.
+    private static String stringKey(int key) {
+        String s = "https://example.org/" + Integer.toString(key, 7);
+        if((key & 3) == 1) s += "\u00e9";
+        if((key & 7) == 3) s += "\ud83d\ude00";
+        return s;
+    }
+
+    private static byte[] bytesKey(int key) {
+        return stringKey(key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // unsigned lexicographic order, a key before every longer key it starts
+    private static int compareBytes(byte[] a, byte[] b) {
+        for(int i = 0; i < Math.min(a.length, b.length); i++) {
+            int cmp = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if(cmp != 0) return cmp;
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private static boolean testSortedLike(SortType[] arr, SortType[] expected) {
+        for(int i = 0; i < arr.length; i++) {
+            if(arr[i].value != expected[i].value || arr[i].key != expected[i].key) return false;
+        }
+        return true;
+    }
+
+    // Each result must match a stable Arrays.sort by the same keys. The CharSequence
+    // keys are also given as StringBuilders, which don't take String.compareTo.
+    private void testPrefixKeyedSorts() {
+        Function<SortType, String> strings = item -> stringKey(item.key);
+        Function<SortType, CharSequence> builders = item -> new StringBuilder(stringKey(item.key));
+        Function<SortType, byte[]> bytes = item -> bytesKey(item.key);
+        Comparator<SortType> byString = (a, b) -> stringKey(a.key).compareTo(stringKey(b.key));
+        Comparator<SortType> byBytes = (a, b) -> compareBytes(bytesKey(a.key), bytesKey(b.key));
+
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+                String name = " (" + len + " items, " + keyCount + " keys)";
+
+                SortType[] stringOrder = newObjects(keys), stringRangeOrder = newObjects(keys);
+                SortType[] bytesOrder = newObjects(keys), bytesRangeOrder = newObjects(keys);
+                Arrays.sort(stringOrder, byString);
+                Arrays.sort(stringRangeOrder, from, to, byString);
+                Arrays.sort(bytesOrder, byBytes);
+                Arrays.sort(bytesRangeOrder, from, to, byBytes);
+
+                for(int mode = 0; mode < 4; mode++) {
+                    SortType[] s1 = newObjects(keys), s2 = newObjects(keys), c1 = newObjects(keys), c2 = newObjects(keys);
+                    SortType[] b1 = newObjects(keys), b2 = newObjects(keys);
+                    switch(mode) {
+                    case 0:
+                        StringKeyedGrailSort.grailSortWithoutBuffer(s1, strings);
+                        StringKeyedGrailSort.grailSortWithoutBuffer(s2, from, to, strings);
+                        StringKeyedGrailSort.grailSortWithoutBuffer(c1, builders);
+                        StringKeyedGrailSort.grailSortWithoutBuffer(c2, from, to, builders);
+                        BytesKeyedGrailSort.grailSortWithoutBuffer(b1, bytes);
+                        BytesKeyedGrailSort.grailSortWithoutBuffer(b2, from, to, bytes);
+                        break;
+                    case 1:
+                        StringKeyedGrailSort.grailSortWithBuffer(s1, strings);
+                        StringKeyedGrailSort.grailSortWithBuffer(s2, from, to, strings);
+                        StringKeyedGrailSort.grailSortWithBuffer(c1, builders);
+                        StringKeyedGrailSort.grailSortWithBuffer(c2, from, to, builders);
+                        BytesKeyedGrailSort.grailSortWithBuffer(b1, bytes);
+                        BytesKeyedGrailSort.grailSortWithBuffer(b2, from, to, bytes);
+                        break;
+                    case 2:
+                        StringKeyedGrailSort.grailSortWithDynBuffer(s1, strings);
+                        StringKeyedGrailSort.grailSortWithDynBuffer(s2, from, to, strings);
+                        StringKeyedGrailSort.grailSortWithDynBuffer(c1, builders);
+                        StringKeyedGrailSort.grailSortWithDynBuffer(c2, from, to, builders);
+                        BytesKeyedGrailSort.grailSortWithDynBuffer(b1, bytes);
+                        BytesKeyedGrailSort.grailSortWithDynBuffer(b2, from, to, bytes);
+                        break;
+                    default:
+                        StringKeyedGrailSort.grailSortAdaptive(s1, strings);
+                        StringKeyedGrailSort.grailSortAdaptive(s2, from, to, strings);
+                        StringKeyedGrailSort.grailSortAdaptive(c1, builders);
+                        StringKeyedGrailSort.grailSortAdaptive(c2, from, to, builders);
+                        BytesKeyedGrailSort.grailSortAdaptive(b1, bytes);
+                        BytesKeyedGrailSort.grailSortAdaptive(b2, from, to, bytes);
+                    }
+                    check(testSortedLike(s1, stringOrder), "StringKeyedGrailSort mode " + mode + name);
+                    check(testSortedLike(s2, stringRangeOrder), "StringKeyedGrailSort mode " + mode + " range" + name);
+                    check(testSortedLike(c1, stringOrder), "StringKeyedGrailSort of StringBuilders mode " + mode + name);
+                    check(testSortedLike(c2, stringRangeOrder), "StringKeyedGrailSort of StringBuilders mode " + mode + " range" + name);
+                    check(testSortedLike(b1, bytesOrder), "BytesKeyedGrailSort mode " + mode + name);
+                    check(testSortedLike(b2, bytesRangeOrder), "BytesKeyedGrailSort mode " + mode + " range" + name);
+                }
+            }
+        }
+        System.out.println("StringKeyedGrailSort and BytesKeyedGrailSort sorted successfully.");
+    }
+
+    // 0: as generated; 1: sorted; 2: sorted, then reversed; 3: 16 sorted batches
+    private static int[] shapeKeys(int[] keys, int shape) {
+        int[] shaped = keys.clone();
+        int len = shaped.length;
+
+        if(shape == 1 || shape == 2) Arrays.sort(shaped);
+        if(shape == 2) {
+            for(int i = 0, j = len - 1; i < j; i++, j--) {
+                int temp = shaped[i];
+                shaped[i] = shaped[j];
+                shaped[j] = temp;
+            }
+        }
+        if(shape == 3) {
+            for(int batch = 0; batch < 16; batch++) Arrays.sort(shaped, len * batch / 16, len * (batch + 1) / 16);
+        }
+        return shaped;
+    }
+
+    // Every path grailSortAuto can pick must sort; the shapes and budgets lead it down
+    // each of them. The plan must describe the sort that was made.
+    private void testAutoSorts() {
+        GrailSort<SortType> sorter = new GrailSort<>(new SortComparator());
+        String[] shapes = { "", ", sorted", ", reversed", ", 16 sorted batches" };
+
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] generated = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+
+                for(int shape = 0; shape < shapes.length; shape++) {
+                    int[] keys = shapeKeys(generated, shape);
+                    String name = " (" + len + " items, " + keyCount + " keys" + shapes[shape] + ")";
+
+                    SortType[] whole = newObjects(keys), range = newObjects(keys);
+                    GrailSortPlan plan = sorter.grailSortAuto(whole);
+                    GrailSortPlan rangePlan = GrailSort.grailSortAuto(range, from, to, new SortComparator());
+                    check(testObjects(whole, keys, 0, len) && plan.getLength() == len, "grailSortAuto" + name);
+                    check(testObjects(range, keys, from, to) && rangePlan.getLength() == to - from, "grailSortAuto range" + name);
+
+                    if(shape == 1 && len > 32) {
+                        check(plan.getPath() == GrailSortMetrics.Path.PRESORTED, "grailSortAuto of sorted input took " + plan.getPath() + name);
+                    }
+
+                    for(int maxBufferLen : new int[] { 0, 40, len }) {
+                        range = newObjects(keys);
+                        plan = sorter.grailSortAuto(range, from, to, maxBufferLen);
+                        check(testObjects(range, keys, from, to) && plan.getBufferLen() <= maxBufferLen,
+                              "grailSortAuto range with a budget of " + maxBufferLen + name);
+                    }
+                }
+            }
+        }
+
+        boolean rejected = false;
+        try {
+            sorter.grailSortAuto(newObjects(generateKeys(100, 0)), 0, 100, -1);
+        }
+        catch(IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected, "grailSortAuto with a negative budget");
+
+        System.out.println("grailSortAuto sorted successfully.");
+    }
+
+    // a small cutoff splits even the short inputs into parallel chunks and merges
+    private void testParallelSort() {
+        ParallelGrailSort<SortType> closed;
+
+        try(ParallelGrailSort<SortType> sorter = new ParallelGrailSort<>(new SortComparator(), 4, 16)) {
+            for(int len : grailLengths) {
+                for(int keyCount : grailKeyCounts) {
+                    int[] keys = generateKeys(len, keyCount);
+                    int from = len / 5, to = len - len / 7;
+                    String name = " (" + len + " items, " + keyCount + " keys)";
+
+                    SortType[] whole = newObjects(keys), range = newObjects(keys);
+                    sorter.sort(whole);
+                    sorter.sort(range, from, to);
+                    check(testObjects(whole, keys, 0, len), "ParallelGrailSort" + name);
+                    check(testObjects(range, keys, from, to), "ParallelGrailSort range" + name);
+                }
+            }
+            closed = sorter;
+        }
+
+        // the sorter's own pool is shut down by close()
+        boolean rejected = false;
+        try {
+            closed.sort(newObjects(generateKeys(1000, 0)));
+        }
+        catch(RejectedExecutionException e) {
+            rejected = true;
+        }
+        check(rejected, "ParallelGrailSort after close()");
+
+        System.out.println("ParallelGrailSort sorted successfully.");
+    }
+
+    // Slices of every length in grailLengths and some short random ones, between a few
+    // items that belong to no slice. Empty slices are allowed.
+    private int[] generateBounds(int len) {
+        int[] lengths = new int[grailLengths.length + 30];
+        for(int i = 0; i < lengths.length; i++) {
+            lengths[i] = i < grailLengths.length ? grailLengths[i] : randomNumber(70);
+        }
+
+        int[] bounds = new int[lengths.length + 1];
+        bounds[0] = 3;
+        for(int i = 0; i < lengths.length; i++) bounds[i + 1] = Math.min(bounds[i] + lengths[i], len - 3);
+        return bounds;
+    }
+
+    // every slice must be sorted and stable on its own, and nothing may cross a bound
+    private static boolean testSlices(SortType[] arr, int[] keys, int[] bounds) {
+        SortType[] expected = newObjects(keys);
+        for(int i = 0; i < bounds.length - 1; i++) {
+            Arrays.sort(expected, bounds[i], bounds[i + 1], new SortComparator());
+        }
+        for(int i = 0; i < arr.length; i++) {
+            if(arr[i].value != expected[i].value || arr[i].key != keys[arr[i].value]) return false;
+        }
+        return true;
+    }
+
+    private void testBatchSorts() {
+        GrailSort<SortType> sorter = new GrailSort<>(new SortComparator());
+        int len = 40000;
+
+        try(ParallelGrailSort<SortType> parallel = new ParallelGrailSort<>(new SortComparator(), 4, 64)) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int[] bounds = generateBounds(len);
+                String name = " (" + (bounds.length - 1) + " slices, " + keyCount + " keys)";
+
+                SortType[] arr = newObjects(keys);
+                sorter.grailSortSlices(arr, bounds);
+                check(testSlices(arr, keys, bounds), "grailSortSlices" + name);
+
+                arr = newObjects(keys);
+                GrailSort.grailSortSlices(arr, bounds, new SortComparator());
+                check(testSlices(arr, keys, bounds), "static grailSortSlices" + name);
+
+                arr = newObjects(keys);
+                parallel.sortSlices(arr, bounds);
+                check(testSlices(arr, keys, bounds), "ParallelGrailSort.sortSlices" + name);
+
+                // the same slices, as arrays of their own
+                List<int[]> sliceKeys = new ArrayList<>();
+                List<SortType[]> arrays = new ArrayList<>(), staticArrays = new ArrayList<>(), parallelArrays = new ArrayList<>();
+                for(int i = 0; i < bounds.length - 1; i++) {
+                    int[] slice = Arrays.copyOfRange(keys, bounds[i], bounds[i + 1]);
+                    sliceKeys.add(slice);
+                    arrays.add(newObjects(slice));
+                    staticArrays.add(newObjects(slice));
+                    parallelArrays.add(newObjects(slice));
+                }
+                sorter.grailSortAll(arrays);
+                GrailSort.grailSortAll(staticArrays, new SortComparator());
+                parallel.sortAll(parallelArrays);
+
+                boolean sorted = true, staticSorted = true, parallelSorted = true;
+                for(int i = 0; i < sliceKeys.size(); i++) {
+                    int[] slice = sliceKeys.get(i);
+                    sorted &= testObjects(arrays.get(i), slice, 0, slice.length);
+                    staticSorted &= testObjects(staticArrays.get(i), slice, 0, slice.length);
+                    parallelSorted &= testObjects(parallelArrays.get(i), slice, 0, slice.length);
+                }
+                check(sorted, "grailSortAll" + name);
+                check(staticSorted, "static grailSortAll" + name);
+                check(parallelSorted, "ParallelGrailSort.sortAll" + name);
+            }
+        }
+
+        // bounds must not go down or outside the array
+        int[][] badBounds = { { 0, 10, 5 }, { -1, 5 }, { 0, 101 } };
+        for(int[] bounds : badBounds) {
+            boolean rejected = false;
+            try {
+                sorter.grailSortSlices(newObjects(generateKeys(100, 0)), bounds);
+            }
+            catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                rejected = true;
+            }
+            check(rejected, "grailSortSlices with bounds " + Arrays.toString(bounds));
+        }
+
+        System.out.println("grailSortAll and grailSortSlices sorted successfully.");
+    }
+
+    // runCount runs of random lengths over arr[3, len - 3], each one sorted stably
+    private int[] generateRuns(SortType[] arr, int runCount) {
+        int len = arr.length;
+        int[] bounds = new int[runCount + 1];
+        bounds[0] = Math.min(3, len);
+        bounds[runCount] = Math.max(len - 3, bounds[0]);
+
+        for(int i = 1; i < runCount; i++) bounds[i] = bounds[0] + randomNumber(bounds[runCount] - bounds[0] + 1);
+        Arrays.sort(bounds, 1, runCount);
+
+        for(int i = 0; i < runCount; i++) Arrays.sort(arr, bounds[i], bounds[i + 1], new SortComparator());
+        return bounds;
+    }
+
+    // Equal items of earlier runs come first, which is what a stable sort of the
+    // runs as they stand gives.
+    private static boolean testMerged(SortType[] merged, SortType[] runs, int[] bounds) {
+        SortType[] expected = runs.clone();
+        if(bounds.length > 1) Arrays.sort(expected, bounds[0], bounds[bounds.length - 1], new SortComparator());
+
+        for(int i = 0; i < merged.length; i++) {
+            if(merged[i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private void testMergeSortedRuns() {
+        GrailSort<SortType> sorter = new GrailSort<>(new SortComparator());
+        int[] runCounts = { 1, 2, 3, 8, 64 };
+
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                for(int runCount : runCounts) {
+                    SortType[] runs = newObjects(generateKeys(len, keyCount));
+                    int[] bounds = generateRuns(runs, runCount);
+                    String name = " (" + len + " items, " + keyCount + " keys, " + runCount + " runs)";
+
+                    SortType[] merged = runs.clone();
+                    sorter.grailMergeSortedRuns(merged, bounds);
+                    check(testMerged(merged, runs, bounds), "grailMergeSortedRuns" + name);
+
+                    merged = runs.clone();
+                    GrailSort.grailMergeSortedRuns(merged, bounds, new SortComparator());
+                    check(testMerged(merged, runs, bounds), "static grailMergeSortedRuns" + name);
+
+                    for(int bufferLen : bufferLens(len)) {
+                        merged = runs.clone();
+                        sorter.grailMergeSortedRuns(merged, bounds, new SortType[bufferLen]);
+                        check(testMerged(merged, runs, bounds), "grailMergeSortedRuns with " + bufferLen + " items of scratch" + name);
+                    }
+                    merged = runs.clone();
+                    GrailSort.grailMergeSortedRuns(merged, bounds, new SortType[len / 2], new SortComparator());
+                    check(testMerged(merged, runs, bounds), "static grailMergeSortedRuns with scratch" + name);
+                }
+            }
+        }
+
+        // no runs at all, and a single bound, are empty merges
+        int[] keys = generateKeys(10, 0);
+        SortType[] arr = newObjects(keys);
+        sorter.grailMergeSortedRuns(arr, new int[0]);
+        sorter.grailMergeSortedRuns(arr, new int[] { 4 });
+        check(testObjects(arr, keys, 0, 0), "grailMergeSortedRuns of no runs");
+
+        System.out.println("grailMergeSortedRuns merged successfully.");
+    }
+
+    /******** Primitives *********/
+
+    // -0.0 and 0.0 are different items to Float.compare and Double.compare, and NaN
+    // is the largest of all, so the keys around 0 stand for them
+    private static double doubleValue(int key) {
+        switch(key) {
+        case 0:  return -0.0;
+        case 1:  return 0.0;
+        case 2:  return Double.NaN;
+        case 3:  return Double.NEGATIVE_INFINITY;
+        default: return key / 8.0;
+        }
+    }
+
+    private static long[] longValues(int[] keys) {
+        long[] arr = new long[keys.length];
+        for(int i = 0; i < keys.length; i++) arr[i] = keys[i] * 3000000019L;
+        return arr;
+    }
+    private static float[] floatValues(int[] keys) {
+        float[] arr = new float[keys.length];
+        for(int i = 0; i < keys.length; i++) arr[i] = (float) doubleValue(keys[i]);
+        return arr;
+    }
+    private static double[] doubleValues(int[] keys) {
+        double[] arr = new double[keys.length];
+        for(int i = 0; i < keys.length; i++) arr[i] = doubleValue(keys[i]);
+        return arr;
+    }
+
+    // Equal primitives can't be told apart, so a primitive sort is right if it matches
+    // Arrays.sort, which orders floats and doubles the same way; Arrays.equals tells
+    // -0.0 from 0.0.
+    private static int[] sortedCopy(int[] arr, int from, int to) {
+        int[] copy = arr.clone();
+        Arrays.sort(copy, from, to);
+        return copy;
+    }
+    private static long[] sortedCopy(long[] arr, int from, int to) {
+        long[] copy = arr.clone();
+        Arrays.sort(copy, from, to);
+        return copy;
+    }
+    private static float[] sortedCopy(float[] arr, int from, int to) {
+        float[] copy = arr.clone();
+        Arrays.sort(copy, from, to);
+        return copy;
+    }
+    private static double[] sortedCopy(double[] arr, int from, int to) {
+        double[] copy = arr.clone();
+        Arrays.sort(copy, from, to);
+        return copy;
+    }
+
+    private static void sortPrimitives(int mode, int[] ints, long[] longs, float[] floats, double[] doubles) {
+        switch(mode) {
+        case 0:
+            IntGrailSort.grailSortWithoutBuffer(ints);
+            LongGrailSort.grailSortWithoutBuffer(longs);
+            FloatGrailSort.grailSortWithoutBuffer(floats);
+            DoubleGrailSort.grailSortWithoutBuffer(doubles);
+            break;
+        case 1:
+            IntGrailSort.grailSortWithBuffer(ints);
+            LongGrailSort.grailSortWithBuffer(longs);
+            FloatGrailSort.grailSortWithBuffer(floats);
+            DoubleGrailSort.grailSortWithBuffer(doubles);
+            break;
+        case 2:
+            IntGrailSort.grailSortWithDynBuffer(ints);
+            LongGrailSort.grailSortWithDynBuffer(longs);
+            FloatGrailSort.grailSortWithDynBuffer(floats);
+            DoubleGrailSort.grailSortWithDynBuffer(doubles);
+            break;
+        default:
+            IntGrailSort.grailSortAdaptive(ints);
+            LongGrailSort.grailSortAdaptive(longs);
+            FloatGrailSort.grailSortAdaptive(floats);
+            DoubleGrailSort.grailSortAdaptive(doubles);
+        }
+    }
+
+    private static void sortPrimitives(int mode, int from, int to, int[] ints, long[] longs, float[] floats, double[] doubles) {
+        switch(mode) {
+        case 0:
+            IntGrailSort.grailSortWithoutBuffer(ints, from, to);
+            LongGrailSort.grailSortWithoutBuffer(longs, from, to);
+            FloatGrailSort.grailSortWithoutBuffer(floats, from, to);
+            DoubleGrailSort.grailSortWithoutBuffer(doubles, from, to);
+            break;
+        case 1:
+            IntGrailSort.grailSortWithBuffer(ints, from, to);
+            LongGrailSort.grailSortWithBuffer(longs, from, to);
+            FloatGrailSort.grailSortWithBuffer(floats, from, to);
+            DoubleGrailSort.grailSortWithBuffer(doubles, from, to);
+            break;
+        case 2:
+            IntGrailSort.grailSortWithDynBuffer(ints, from, to);
+            LongGrailSort.grailSortWithDynBuffer(longs, from, to);
+            FloatGrailSort.grailSortWithDynBuffer(floats, from, to);
+            DoubleGrailSort.grailSortWithDynBuffer(doubles, from, to);
+            break;
+        default:
+            IntGrailSort.grailSortAdaptive(ints, from, to);
+            LongGrailSort.grailSortAdaptive(longs, from, to);
+            FloatGrailSort.grailSortAdaptive(floats, from, to);
+            DoubleGrailSort.grailSortAdaptive(doubles, from, to);
+        }
+    }
+
+    private void testPrimitiveSorts() {
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] ints = generateKeys(len, keyCount);
+                long[] longs = longValues(ints);
+                float[] floats = floatValues(ints);
+                double[] doubles = doubleValues(ints);
+                int from = len / 5, to = len - len / 7;
+                String name = " (" + len + " items, " + keyCount + " keys)";
+
+                for(int mode = 0; mode < 4; mode++) {
+                    int[] i1 = ints.clone();
+                    long[] l1 = longs.clone();
+                    float[] f1 = floats.clone();
+                    double[] d1 = doubles.clone();
+
+                    sortPrimitives(mode, i1, l1, f1, d1);
+                    check(Arrays.equals(i1, sortedCopy(ints, 0, len)), "IntGrailSort mode " + mode + name);
+                    check(Arrays.equals(l1, sortedCopy(longs, 0, len)), "LongGrailSort mode " + mode + name);
+                    check(Arrays.equals(f1, sortedCopy(floats, 0, len)), "FloatGrailSort mode " + mode + name);
+                    check(Arrays.equals(d1, sortedCopy(doubles, 0, len)), "DoubleGrailSort mode " + mode + name);
+
+                    i1 = ints.clone();
+                    l1 = longs.clone();
+                    f1 = floats.clone();
+                    d1 = doubles.clone();
+
+                    sortPrimitives(mode, from, to, i1, l1, f1, d1);
+                    check(Arrays.equals(i1, sortedCopy(ints, from, to)), "IntGrailSort mode " + mode + " range" + name);
+                    check(Arrays.equals(l1, sortedCopy(longs, from, to)), "LongGrailSort mode " + mode + " range" + name);
+                    check(Arrays.equals(f1, sortedCopy(floats, from, to)), "FloatGrailSort mode " + mode + " range" + name);
+                    check(Arrays.equals(d1, sortedCopy(doubles, from, to)), "DoubleGrailSort mode " + mode + " range" + name);
+                }
+            }
+        }
+        System.out.println("IntGrailSort, LongGrailSort, FloatGrailSort and DoubleGrailSort sorted successfully.");
+    }
+
+    // The small sorts and buffered merges of IntGrailSort and LongGrailSort, straight
+    // through GrailSortingNetworks: the Vector API kernels when src-vector is loaded,
+    // otherwise the scalar network. A merge the kernels turn down must leave arr alone.
+    private void testSortingNetworks() {
+        for(int len = 0; len <= GrailSortingNetworks.grailNetworkMax; len++) {
+            for(int keyCount : grailKeyCounts) {
+                int[] ints = generateKeys(len + 2, keyCount);
+                long[] longs = longValues(ints);
+                String name = " (" + len + " items, " + keyCount + " keys)";
+
+                int[] i1 = ints.clone();
+                long[] l1 = longs.clone();
+                GrailSortingNetworks.grailSort(i1, 1, len);
+                GrailSortingNetworks.grailSort(l1, 1, len);
+                check(Arrays.equals(i1, sortedCopy(ints, 1, len + 1)), "int sorting network" + name);
+                check(Arrays.equals(l1, sortedCopy(longs, 1, len + 1)), "long sorting network" + name);
+            }
+        }
+
+        for(int len1 = 0; len1 < 100; len1 += 3) {
+            for(int len2 = 0; len2 < 100; len2 += 5) {
+                for(int keyCount : grailKeyCounts) {
+                    int[] ints = generateKeys(len1 + len2 + 2, keyCount);
+                    Arrays.sort(ints, 1, len1 + 1);
+                    Arrays.sort(ints, len1 + 1, len1 + len2 + 1);
+                    long[] longs = longValues(ints);
+                    String name = " (" + len1 + " + " + len2 + " items, " + keyCount + " keys)";
+
+                    int[] i1 = ints.clone();
+                    long[] l1 = longs.clone();
+                    int bufferLen = Math.min(len1, len2);
+                    boolean intsMerged = GrailSortingNetworks.grailMergeWithExtBuf(i1, 1, len1, len2, new int[bufferLen + 3], 3);
+                    boolean longsMerged = GrailSortingNetworks.grailMergeWithExtBuf(l1, 1, len1, len2, new long[bufferLen + 3], 3);
+                    check(Arrays.equals(i1, intsMerged ? sortedCopy(ints, 1, len1 + len2 + 1) : ints), "int merge kernel" + name);
+                    check(Arrays.equals(l1, longsMerged ? sortedCopy(longs, 1, len1 + len2 + 1) : longs), "long merge kernel" + name);
+                }
+            }
+        }
+        System.out.println("GrailSortingNetworks sorted and merged successfully"
+                         + (GrailSortingNetworks.grailVectorized() ? " with the Vector API kernels." : ", scalar only."));
+    }
+
+    /******** Columns *********/
+
+    private static void sortColumns(int mode, int from, int to, int[] intKeys, long[] longKeys, Object[] intColumns, Object[] longColumns) {
+        switch(mode) {
+        case 0:
+            IntColumnGrailSort.grailSortWithoutBuffer(intKeys, from, to, intColumns);
+            LongColumnGrailSort.grailSortWithoutBuffer(longKeys, from, to, longColumns);
+            break;
+        case 1:
+            IntColumnGrailSort.grailSortWithBuffer(intKeys, from, to, intColumns);
+            LongColumnGrailSort.grailSortWithBuffer(longKeys, from, to, longColumns);
+            break;
+        case 2:
+            IntColumnGrailSort.grailSortWithDynBuffer(intKeys, from, to, intColumns);
+            LongColumnGrailSort.grailSortWithDynBuffer(longKeys, from, to, longColumns);
+            break;
+        default:
+            IntColumnGrailSort.grailSortAdaptive(intKeys, from, to, intColumns);
+            LongColumnGrailSort.grailSortAdaptive(longKeys, from, to, longColumns);
+        }
+    }
+
+    // The first attached column holds the original positions, so the key column and
+    // every other column can be checked against them.
+    private static Object[] newColumns(int[] keys) {
+        return new Object[] { identity(keys.length), longValues(keys), floatValues(keys), doubleValues(keys) };
+    }
+
+    private static boolean testColumns(int[] intKeys, long[] longKeys, Object[] columns, int[] keys, int from, int to) {
+        int[] positions = (int[]) columns[0];
+        long[] longs = (long[]) columns[1];
+        float[] floats = (float[]) columns[2];
+        double[] doubles = (double[]) columns[3];
+
+        if(!testOrder(positions, keys, from, to)) return false;
+        for(int i = 0; i < keys.length; i++) {
+            int index = positions[i];
+            boolean moved = (intKeys == null || intKeys[i] == keys[index])
+                            && (longKeys == null || longKeys[i] == keys[index] * 3000000019L)
+                            && longs[i] == keys[index] * 3000000019L
+                            && Float.floatToIntBits(floats[i]) == Float.floatToIntBits((float) doubleValue(keys[index]))
+                            && Double.doubleToLongBits(doubles[i]) == Double.doubleToLongBits(doubleValue(keys[index]));
+            if(!moved) return false;
+        }
+        return true;
+    }
+
+    private void testColumnSorts() {
+        for(int len : grailLengths) {
+            for(int keyCount : grailKeyCounts) {
+                int[] keys = generateKeys(len, keyCount);
+                int from = len / 5, to = len - len / 7;
+                String name = " (" + len + " rows, " + keyCount + " keys)";
+
+                for(int mode = 0; mode < 4; mode++) {
+                    int[] intKeys = keys.clone();
+                    long[] longKeys = longValues(keys);
+                    Object[] intColumns = newColumns(keys), longColumns = newColumns(keys);
+
+                    sortColumns(mode, 0, len, intKeys, longKeys, intColumns, longColumns);
+                    check(testColumns(intKeys, null, intColumns, keys, 0, len), "IntColumnGrailSort mode " + mode + name);
+                    check(testColumns(null, longKeys, longColumns, keys, 0, len), "LongColumnGrailSort mode " + mode + name);
+
+                    intKeys = keys.clone();
+                    longKeys = longValues(keys);
+                    intColumns = newColumns(keys);
+                    longColumns = newColumns(keys);
+
+                    sortColumns(mode, from, to, intKeys, longKeys, intColumns, longColumns);
+                    check(testColumns(intKeys, null, intColumns, keys, from, to), "IntColumnGrailSort mode " + mode + " range" + name);
+                    check(testColumns(null, longKeys, longColumns, keys, from, to), "LongColumnGrailSort mode " + mode + " range" + name);
+                }
+
+                // no attached columns at all is a plain key sort
+                int[] intKeys = keys.clone();
+                IntColumnGrailSort.grailSortWithBuffer(intKeys, new Object[0]);
+                check(Arrays.equals(intKeys, sortedCopy(keys, 0, len)), "IntColumnGrailSort without columns" + name);
+            }
+        }
+
+        // columns that can't follow the keys are rejected before anything moves
+        int[] keys = generateKeys(100, 0);
+        int[] intKeys = keys.clone();
+        Object[][] badColumns = { { null }, { intKeys }, { new int[99] }, { new String[100] }, { keys, keys } };
+        String[] badNames = { "a null column", "the key column", "a short column", "a String[] column", "one column twice" };
+        for(int i = 0; i < badColumns.length; i++) {
+            boolean rejected = false;
+            try {
+                IntColumnGrailSort.grailSortWithBuffer(intKeys, badColumns[i]);
+            }
+            catch(IllegalArgumentException | NullPointerException e) {
+                rejected = true;
+            }
+            check(rejected && Arrays.equals(intKeys, keys), "IntColumnGrailSort with " + badNames[i]);
+        }
+
+        System.out.println("IntColumnGrailSort and LongColumnGrailSort sorted successfully.");
+    }
+
+    /******** Records *********/
+
+    // The key is an int at offset 0, the original position an int at offset 4 and
+    // every other byte is derived from that position, so a record whose bytes got
+    // mixed up by a move (e.g. by a buffer in the other byte order) is caught.
+    private static byte recordFiller(int index, int offset) {
+        return (byte) (index * 31 + offset * 7);
+    }
+
+    private static ByteBuffer newRecords(int[] keys, int width, ByteOrder order) {
+        ByteBuffer records = ByteBuffer.allocate(keys.length * width).order(order);
+        for(int i = 0; i < keys.length; i++) {
+            records.putInt(i * width, keys[i]);
+            records.putInt(i * width + 4, i);
+            for(int j = 8; j < width; j++) records.put(i * width + j, recordFiller(i, j));
+        }
+        return records;
+    }
+
+    private static boolean testRecords(ByteBuffer records, int width, int[] keys, int from, int to) {
+        int len = keys.length;
+        for(int i = 0; i < len; i++) {
+            int index = records.getInt(i * width + 4);
+            if(index < 0 || index >= len || records.getInt(i * width) != keys[index]) return false;
+            for(int j = 8; j < width; j++) {
+                if(records.get(i * width + j) != recordFiller(index, j)) return false;
+            }
+            if((i < from || i >= to) && index != i) return false;
+            if(i > from && i < to) {
+                int prev = records.getInt((i - 1) * width + 4);
+                int dk = Integer.compare(keys[prev], keys[index]);
+                if(dk > 0 || (dk == 0 && prev > index)) return false;
+            }
+        }
+        return true;
+    }
+
+    private void testRecordSorts() {
+        // 12, 13 and 20 byte records don't split into 8-byte copies
+        int[] widths = { 8, 12, 13, 20 };
+        ByteOrder[] orders = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+        for(ByteOrder order : orders) {
+            for(int width : widths) {
+                RecordGrailSort sorter = new RecordGrailSort(width, 0, RecordGrailSort.KeyType.INT);
+
+                for(int len : grailLengths) {
+                    for(int keyCount : grailKeyCounts) {
+                        int[] keys = generateKeys(len, keyCount);
+                        int from = len / 5, to = len - len / 7;
+                        String name = "RecordGrailSort (" + order + ", " + width + " bytes, " + len + " records, " + keyCount + " keys)";
+
+                        for(int mode = 0; mode < 4; mode++) {
+                            ByteBuffer whole = newRecords(keys, width, order);
+                            ByteBuffer range = newRecords(keys, width, order);
+
+                            switch(mode) {
+                            case 0:
+                                sorter.grailSortWithoutBuffer(whole);
+                                sorter.grailSortWithoutBuffer(range, from, to);
+                                break;
+                            case 1:
+                                sorter.grailSortWithBuffer(whole);
+                                sorter.grailSortWithBuffer(range, from, to);
+                                break;
+                            case 2:
+                                sorter.grailSortWithDynBuffer(whole);
+                                sorter.grailSortWithDynBuffer(range, from, to);
+                                break;
+                            default:
+                                sorter.grailSortAdaptive(whole);
+                                sorter.grailSortAdaptive(range, from, to);
+                            }
+
+                            check(testRecords(whole, width, keys, 0, len), name + " mode " + mode);
+                            check(testRecords(range, width, keys, from, to), name + " mode " + mode + " range");
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("RecordGrailSort sorted successfully.");
+    }
+
+    // Budgets of 40 records and a fan-in of 4 spill many runs and take several merge
+    // passes; the largest budget sorts the whole file in memory.
+    private void testExternalSort() throws IOException {
+        int[] widths = { 12, 20 };
+        ByteOrder[] orders = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+        int[] budgetLens = { 40, 1000, 100000 };
+        int len = 20001;
+
+        Path dir = Files.createTempDirectory("grail");
+        Path input = dir.resolve("input"), output = dir.resolve("output");
+        try {
+            for(ByteOrder order : orders) {
+                for(int width : widths) {
+                    RecordGrailSort sorter = new RecordGrailSort(width, 0, RecordGrailSort.KeyType.INT);
+
+                    for(int keyCount : grailKeyCounts) {
+                        int[] keys = generateKeys(len, keyCount);
+                        try(FileChannel in = FileChannel.open(input, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                              StandardOpenOption.TRUNCATE_EXISTING)) {
+                            ByteBuffer records = newRecords(keys, width, order);
+                            while(records.hasRemaining()) in.write(records);
+                        }
+
+                        for(int budgetLen : budgetLens) {
+                            ExternalGrailSort external = new ExternalGrailSort(sorter, order, (long) budgetLen * width, 4, dir);
+                            external.sort(input, output);
+
+                            ByteBuffer sorted = ByteBuffer.wrap(Files.readAllBytes(output)).order(order);
+                            check(sorted.capacity() == len * width && testRecords(sorted, width, keys, 0, len),
+                                  "ExternalGrailSort (" + order + ", " + width + " bytes, " + keyCount + " keys, budget of "
+                                  + budgetLen + " records)");
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.delete(dir);
+        }
+        System.out.println("ExternalGrailSort sorted successfully.");
+    }
+
+    public static void main(String[] args) throws IOException {
+        ApiTester GrailTest = new ApiTester();
+
+        GrailTest.testExtremeComparator();
+        GrailTest.testOneOffSorts();
+        GrailTest.testKeyedSorts();
+        GrailTest.testPrefixKeyedSorts();
+        GrailTest.testBufferedSorts();
+        GrailTest.testAutoSorts();
+        GrailTest.testArgSorts();
+        GrailTest.testParallelSort();
+        GrailTest.testBatchSorts();
+        GrailTest.testMergeSortedRuns();
+        GrailTest.testPrimitiveSorts();
+        GrailTest.testSortingNetworks();
+        GrailTest.testColumnSorts();
+        GrailTest.testRecordSorts();
+        GrailTest.testExternalSort();
+
+        System.out.println(" ");
+        System.out.println("All " + GrailTest.checks + " checks passed.");
+    }
+}
@@ -0,0 +1,572 @@
+package javagrailsort;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/********* Grail sorting benchmarks **********************/
+/*                                                       */
+/* A microbenchmark harness for tracking regressions,    */
+/* following the JMH methodology without needing a       */
+/* build system:                                         */
+/*                                                       */
+/* - every configuration runs in freshly forked JVMs,    */
+/*   so JIT profiles from one sort can't leak into the   */
+/*   next one;                                           */
+/* - warmup iterations are run and thrown away before    */
+/*   the measured ones;                                  */
+/* - an iteration repeats the sort until it has spent    */
+/*   the iteration time sorting, restoring the input     */
+/*   untimed between operations;                         */
+/* - every result is verified and folded into a          */
+/*   volatile sink, so no sort can be optimized away.    */
+/*                                                       */
+/* Parameters (comma separated lists, case-insensitive): */
+/*  -m  buffer modes and baselines (see Mode)            */
+/*  -t  element types (see ElementType)                  */
+/*  -d  key distributions (see Distribution)             */
+/*  -n  array lengths, e.g. 1k,100k,10m,50m              */
+/*  -wi warmup iterations           (default 5)          */
+/*  -i  measurement iterations      (default 5)          */
+/*  -r  iteration time in ms        (default 1000)       */
+/*  -f  forks per configuration     (default 1, 0 runs   */
+/*      everything in this JVM)                          */
+/*                                                       */
+/* Forked JVMs inherit this JVM's options, so run large  */
+/* sizes with enough heap, e.g. -Xmx4g for 50m objects.  */
+/*                                                       */
+/*********************************************************/
+
+final public class Benchmark {
+
+    enum Mode {
+        WITHOUT_BUFFER,
+        STATIC_BUFFER,
+        DYNAMIC_BUFFER,
+        ADAPTIVE,
+        PARALLEL,
+        // objects only: grailSortWithDynBuffer by an extracted int key, without the Comparator
+        KEY_EXTRACTOR,
+        // objects only: grailSortAuto, with the path picked from a sample of the input
+        AUTO,
+        // baselines: TimSort for objects, Dual-Pivot Quicksort for primitives
+        ARRAYS_SORT,
+        ARRAYS_PARALLEL_SORT
+    }
+
+    enum ElementType {
+        OBJECT,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE
+    }
+
+    enum Distribution {
+        // the two key counts Tester alternates between
+        SQRT_KEYS,
+        HALF_SQRT_KEYS,
+        DISTINCT,
+        FEW_UNIQUE,
+        SORTED,
+        REVERSED,
+        SAWTOOTH,
+        SORTED_BATCHES
+    }
+
+    final private static long grailSeed = 100000001L;
+    final private static int grailFewUniqueKeys = 8;
+    final private static int grailSortedBatches = 16;
+
+    // results of every checked sort end up here
+    private static volatile long sink;
+
+    /******** Workloads *********/
+
+    private static abstract class Workload {
+        // restores the unsorted input; never timed
+        abstract void reset();
+
+        abstract void sort(Mode mode);
+
+        // throws if the last sort was wrong, otherwise returns a checksum for the sink
+        abstract long check();
+
+        boolean supports(Mode mode) {
+            return true;
+        }
+    }
+
+    private static final class ObjectWorkload extends Workload {
+        private final SortComparator cmp = new SortComparator();
+        private final GrailSort<SortType> grail = new GrailSort<>(this.cmp);
+        private final ParallelGrailSort<SortType> parallel = new ParallelGrailSort<>(this.cmp);
+
+        private final SortType[] source, work;
+
+        ObjectWorkload(int[] keys) {
+            this.source = new SortType[keys.length];
+            this.work = new SortType[keys.length];
+            // the original position is the value, so stability can be checked
+            for(int i = 0; i < keys.length; i++) this.source[i] = new SortType(keys[i], i);
+        }
+
+        @Override
+        void reset() {
+            System.arraycopy(this.source, 0, this.work, 0, this.source.length);
+        }
+
+        @Override
+        void sort(Mode mode) {
+            switch(mode) {
+            case WITHOUT_BUFFER:       this.grail.grailSortWithoutBuffer(this.work); break;
+            case STATIC_BUFFER:        this.grail.grailSortWithBuffer(this.work); break;
+            case DYNAMIC_BUFFER:       this.grail.grailSortWithDynBuffer(this.work); break;
+            case ADAPTIVE:             this.grail.grailSortAdaptive(this.work); break;
+            case PARALLEL:             this.parallel.sort(this.work); break;
+            case KEY_EXTRACTOR:        IntKeyedGrailSort.grailSortWithDynBuffer(this.work, e -> e.key); break;
+            case AUTO:                 this.grail.grailSortAuto(this.work); break;
+            case ARRAYS_SORT:          Arrays.sort(this.work, this.cmp); break;
+            case ARRAYS_PARALLEL_SORT: Arrays.parallelSort(this.work, this.cmp); break;
+            }
+        }
+
+        @Override
+        long check() {
+            long sum = 0;
+            for(int i = 1; i < this.work.length; i++) {
+                int dk = this.cmp.compare(this.work[i - 1], this.work[i]);
+                if(dk > 0 || (dk == 0 && this.work[i - 1].value > this.work[i].value)) {
+                    throw new IllegalStateException("Not sorted stably at index " + i);
+                }
+                sum += this.work[i].value;
+            }
+            return sum;
+        }
+    }
+
+    private static final class IntWorkload extends Workload {
+        private final int[] source, work;
+
+        IntWorkload(int[] keys) {
+            this.source = keys.clone();
+            this.work = new int[keys.length];
+        }
+
+        @Override
+        void reset() {
+            System.arraycopy(this.source, 0, this.work, 0, this.source.length);
+        }
+
+        @Override
+        boolean supports(Mode mode) {
+            return mode != Mode.PARALLEL && mode != Mode.KEY_EXTRACTOR && mode != Mode.AUTO;
+        }
+
+        @Override
+        void sort(Mode mode) {
+            switch(mode) {
+            case WITHOUT_BUFFER:       IntGrailSort.grailSortWithoutBuffer(this.work); break;
+            case STATIC_BUFFER:        IntGrailSort.grailSortWithBuffer(this.work); break;
+            case DYNAMIC_BUFFER:       IntGrailSort.grailSortWithDynBuffer(this.work); break;
+            case ADAPTIVE:             IntGrailSort.grailSortAdaptive(this.work); break;
+            case ARRAYS_SORT:          Arrays.sort(this.work); break;
+            case ARRAYS_PARALLEL_SORT: Arrays.parallelSort(this.work); break;
+            default: throw new UnsupportedOperationException(mode.toString());
+            }
+        }
+
+        @Override
+        long check() {
+            long sum = 0;
+            for(int i = 1; i < this.work.length; i++) {
+                if(this.work[i - 1] > this.work[i]) throw new IllegalStateException("Not sorted at index " + i);
+                sum += this.work[i];
+            }
+            return sum;
+        }
+    }
+
+    private static final class LongWorkload extends Workload {
+        private final long[] source, work;
+
+        LongWorkload(int[] keys) {
+            this.source = new long[keys.length];
+            this.work = new long[keys.length];
+            // spread the keys over the whole long range, keeping their order and duplicates
+            for(int i = 0; i < keys.length; i++) this.source[i] = ((long) keys[i] << 32) - Long.MAX_VALUE / 2;
+        }
+
+        @Override
+        void reset() {
+            System.arraycopy(this.source, 0, this.work, 0, this.source.length);
+        }
+
+        @Override
+        boolean supports(Mode mode) {
+            return mode != Mode.PARALLEL && mode != Mode.KEY_EXTRACTOR && mode != Mode.AUTO;
+        }
+
+        @Override
+        void sort(Mode mode) {
+            switch(mode) {
+            case WITHOUT_BUFFER:       LongGrailSort.grailSortWithoutBuffer(this.work); break;
+            case STATIC_BUFFER:        LongGrailSort.grailSortWithBuffer(this.work); break;
+            case DYNAMIC_BUFFER:       LongGrailSort.grailSortWithDynBuffer(this.work); break;
+            case ADAPTIVE:             LongGrailSort.grailSortAdaptive(this.work); break;
+            case ARRAYS_SORT:          Arrays.sort(this.work); break;
+            case ARRAYS_PARALLEL_SORT: Arrays.parallelSort(this.work); break;
+            default: throw new UnsupportedOperationException(mode.toString());
+            }
+        }
+
+        @Override
+        long check() {
+            long sum = 0;
+            for(int i = 1; i < this.work.length; i++) {
+                if(this.work[i - 1] > this.work[i]) throw new IllegalStateException("Not sorted at index " + i);
+                sum += this.work[i];
+            }
+            return sum;
+        }
+    }
+
+    private static final class FloatWorkload extends Workload {
+        private final float[] source, work;
+
+        FloatWorkload(int[] keys) {
+            this.source = new float[keys.length];
+            this.work = new float[keys.length];
+            for(int i = 0; i < keys.length; i++) this.source[i] = keys[i] * 0.5f;
+        }
+
+        @Override
+        void reset() {
+            System.arraycopy(this.source, 0, this.work, 0, this.source.length);
+        }
+
+        @Override
+        boolean supports(Mode mode) {
+            return mode != Mode.PARALLEL && mode != Mode.KEY_EXTRACTOR && mode != Mode.AUTO;
+        }
+
+        @Override
+        void sort(Mode mode) {
+            switch(mode) {
+            case WITHOUT_BUFFER:       FloatGrailSort.grailSortWithoutBuffer(this.work); break;
+            case STATIC_BUFFER:        FloatGrailSort.grailSortWithBuffer(this.work); break;
+            case DYNAMIC_BUFFER:       FloatGrailSort.grailSortWithDynBuffer(this.work); break;
+            case ADAPTIVE:             FloatGrailSort.grailSortAdaptive(this.work); break;
+            case ARRAYS_SORT:          Arrays.sort(this.work); break;
+            case ARRAYS_PARALLEL_SORT: Arrays.parallelSort(this.work); break;
+            default: throw new UnsupportedOperationException(mode.toString());
+            }
+        }
+
+        @Override
+        long check() {
+            long sum = 0;
+            for(int i = 1; i < this.work.length; i++) {
+                if(Float.compare(this.work[i - 1], this.work[i]) > 0) throw new IllegalStateException("Not sorted at index " + i);
+                sum += Float.floatToIntBits(this.work[i]);
+            }
+            return sum;
+        }
+    }
+
+    private static final class DoubleWorkload extends Workload {
+        private final double[] source, work;
+
+        DoubleWorkload(int[] keys) {
+            this.source = new double[keys.length];
+            this.work = new double[keys.length];
+            for(int i = 0; i < keys.length; i++) this.source[i] = keys[i] * 0.5;
+        }
+
+        @Override
+        void reset() {
+            System.arraycopy(this.source, 0, this.work, 0, this.source.length);
+        }
+
+        @Override
+        boolean supports(Mode mode) {
+            return mode != Mode.PARALLEL && mode != Mode.KEY_EXTRACTOR && mode != Mode.AUTO;
+        }
+
+        @Override
+        void sort(Mode mode) {
+            switch(mode) {
+            case WITHOUT_BUFFER:       DoubleGrailSort.grailSortWithoutBuffer(this.work); break;
+            case STATIC_BUFFER:        DoubleGrailSort.grailSortWithBuffer(this.work); break;
+            case DYNAMIC_BUFFER:       DoubleGrailSort.grailSortWithDynBuffer(this.work); break;
+            case ADAPTIVE:             DoubleGrailSort.grailSortAdaptive(this.work); break;
+            case ARRAYS_SORT:          Arrays.sort(this.work); break;
+            case ARRAYS_PARALLEL_SORT: Arrays.parallelSort(this.work); break;
+            default: throw new UnsupportedOperationException(mode.toString());
+            }
+        }
+
+        @Override
+        long check() {
+            long sum = 0;
+            for(int i = 1; i < this.work.length; i++) {
+                if(Double.compare(this.work[i - 1], this.work[i]) > 0) throw new IllegalStateException("Not sorted at index " + i);
+                sum += Double.doubleToLongBits(this.work[i]);
+            }
+            return sum;
+        }
+    }
+
+    private static Workload newWorkload(ElementType type, int[] keys) {
+        switch(type) {
+        case OBJECT: return new ObjectWorkload(keys);
+        case INT:    return new IntWorkload(keys);
+        case LONG:   return new LongWorkload(keys);
+        case FLOAT:  return new FloatWorkload(keys);
+        case DOUBLE: return new DoubleWorkload(keys);
+        default: throw new IllegalArgumentException(type.toString());
+        }
+    }
+
+    private static boolean supports(ElementType type, Mode mode) {
+        return type == ElementType.OBJECT || (mode != Mode.PARALLEL && mode != Mode.KEY_EXTRACTOR && mode != Mode.AUTO);
+    }
+
+    /******** Inputs *********/
+
+    private static void fillRandom(int[] keys, Random random, int keyCount) {
+        for(int i = 0; i < keys.length; i++) keys[i] = random.nextInt(keyCount);
+    }
+
+    static int[] generateKeys(Distribution dist, int len) {
+        Random random = new Random(grailSeed);
+        int[] keys = new int[len];
+        int root = Math.max(1, (int) Math.sqrt(len));
+
+        switch(dist) {
+        case SQRT_KEYS:
+            fillRandom(keys, random, Math.max(1, 2 * root - 1));
+            break;
+        case HALF_SQRT_KEYS:
+            fillRandom(keys, random, Math.max(1, root - 1));
+            break;
+        case DISTINCT:
+            for(int i = 0; i < len; i++) keys[i] = i;
+            for(int i = len - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int temp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = temp;
+            }
+            break;
+        case FEW_UNIQUE:
+            fillRandom(keys, random, grailFewUniqueKeys);
+            break;
+        case SORTED:
+            for(int i = 0; i < len; i++) keys[i] = i;
+            break;
+        case REVERSED:
+            for(int i = 0; i < len; i++) keys[i] = len - 1 - i;
+            break;
+        case SAWTOOTH:
+            // sqrt(n) ascending runs of sqrt(n) items each
+            for(int i = 0; i < len; i++) keys[i] = i % root;
+            break;
+        case SORTED_BATCHES:
+            // random batches that were each sorted before being concatenated
+            fillRandom(keys, random, Integer.MAX_VALUE);
+            for(int i = 0; i < grailSortedBatches; i++) {
+                Arrays.sort(keys, (int) ((long) len * i / grailSortedBatches), (int) ((long) len * (i + 1) / grailSortedBatches));
+            }
+            break;
+        }
+        return keys;
+    }
+
+    /******** Measurement *********/
+
+    // average sort time of one iteration in microseconds
+    private static double iteration(Workload workload, Mode mode, long iterationNanos) {
+        long elapsed = 0;
+        long ops = 0;
+
+        do {
+            workload.reset();
+            long start = System.nanoTime();
+            workload.sort(mode);
+            elapsed += System.nanoTime() - start;
+            ops++;
+
+            sink += workload.check();
+        } while(elapsed < iterationNanos);
+
+        return elapsed / 1e+3 / ops;
+    }
+
+    private final List<Mode> modes = new ArrayList<>();
+    private final List<ElementType> types = new ArrayList<>();
+    private final List<Distribution> dists = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+
+    private int warmupIterations = 5;
+    private int iterations = 5;
+    private long iterationMillis = 1000;
+    private int forks = 1;
+    private boolean child;
+
+    private List<Double> runHere(Mode mode, ElementType type, Distribution dist, int size) {
+        Workload workload = newWorkload(type, generateKeys(dist, size));
+        List<Double> scores = new ArrayList<>();
+
+        for(int i = 0; i < this.warmupIterations + this.iterations; i++) {
+            double score = iteration(workload, mode, this.iterationMillis * 1000000L);
+
+            if(i < this.warmupIterations) {
+                if(!this.child) System.out.println(String.format(Locale.US, "# Warmup Iteration %3d: %.3f us/op", i + 1, score));
+            }
+            else {
+                scores.add(score);
+                if(this.child) System.out.println("@" + score);
+                else System.out.println(String.format(Locale.US, "Iteration %3d: %.3f us/op", i - this.warmupIterations + 1, score));
+            }
+        }
+        return scores;
+    }
+
+    private List<Double> runForked(Mode mode, ElementType type, Distribution dist, int size) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Benchmark.class.getName());
+        command.addAll(Arrays.asList("-child",
+                                     "-m", mode.name(), "-t", type.name(), "-d", dist.name(), "-n", Integer.toString(size),
+                                     "-wi", Integer.toString(this.warmupIterations), "-i", Integer.toString(this.iterations),
+                                     "-r", Long.toString(this.iterationMillis)));
+
+        List<Double> scores = new ArrayList<>();
+
+        for(int f = 0; f < this.forks; f++) {
+            System.out.println("# Fork " + (f + 1) + " of " + this.forks);
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+            try(BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while((line = out.readLine()) != null) {
+                    if(line.startsWith("@")) {
+                        double score = Double.parseDouble(line.substring(1));
+                        scores.add(score);
+                        System.out.println(String.format(Locale.US, "Iteration %3d: %.3f us/op", scores.size(), score));
+                    }
+                    else System.out.println(line);
+                }
+            }
+            if(process.waitFor() != 0) throw new IllegalStateException("Forked benchmark JVM exited with " + process.exitValue());
+        }
+        return scores;
+    }
+
+    private static String summary(Mode mode, ElementType type, Distribution dist, int size, List<Double> scores) {
+        double mean = 0;
+        for(double score : scores) mean += score;
+        mean /= scores.size();
+
+        double variance = 0;
+        for(double score : scores) variance += (score - mean) * (score - mean);
+        double stdev = scores.size() > 1 ? Math.sqrt(variance / (scores.size() - 1)) : Double.NaN;
+
+        return String.format(Locale.US, "%-20s %-6s %-14s %10d %4d %16.3f %12.3f  us/op",
+                             mode, type, dist, size, scores.size(), mean, stdev);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        List<String> results = new ArrayList<>();
+
+        for(ElementType type : this.types) {
+            for(Distribution dist : this.dists) {
+                for(int size : this.sizes) {
+                    for(Mode mode : this.modes) {
+                        if(!supports(type, mode)) continue;
+
+                        if(!this.child) {
+                            System.out.println(" ");
+                            System.out.println("# Benchmark: " + mode + ", " + type + ", " + dist + ", n = " + size);
+                        }
+                        List<Double> scores = this.forks > 0 && !this.child ? runForked(mode, type, dist, size)
+                                                                            : runHere(mode, type, dist, size);
+                        results.add(summary(mode, type, dist, size, scores));
+                    }
+                }
+            }
+        }
+        if(this.child) return;
+
+        System.out.println(" ");
+        System.out.println(String.format(Locale.US, "%-20s %-6s %-14s %10s %4s %16s %12s", "Mode", "Type", "Distribution", "Size", "Cnt", "Score", "Stdev"));
+        for(String result : results) System.out.println(result);
+    }
+
+    /******** Options *********/
+
+    private static <E extends Enum<E>> void parseEnums(List<E> list, Class<E> type, String arg) {
+        for(String name : arg.split(",")) list.add(Enum.valueOf(type, name.trim().toUpperCase(Locale.ROOT)));
+    }
+
+    // accepts plain lengths as well as k and m suffixes, e.g. 1k or 50m
+    private static int parseSize(String arg) {
+        String size = arg.trim().toLowerCase(Locale.ROOT).replace("_", "");
+        int scale = 1;
+
+        if(size.endsWith("k")) scale = 1000;
+        else if(size.endsWith("m")) scale = 1000000;
+        if(scale != 1) size = size.substring(0, size.length() - 1);
+
+        return Math.multiplyExact(Integer.parseInt(size), scale);
+    }
+
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if(option.equals("-child")) {
+                this.child = true;
+                continue;
+            }
+            if(i + 1 == args.length) throw new IllegalArgumentException("Missing value for " + option);
+            String value = args[++i];
+
+            switch(option) {
+            case "-m":  parseEnums(this.modes, Mode.class, value); break;
+            case "-t":  parseEnums(this.types, ElementType.class, value); break;
+            case "-d":  parseEnums(this.dists, Distribution.class, value); break;
+            case "-n":  for(String size : value.split(",")) this.sizes.add(parseSize(size)); break;
+            case "-wi": this.warmupIterations = Integer.parseInt(value); break;
+            case "-i":  this.iterations = Integer.parseInt(value); break;
+            case "-r":  this.iterationMillis = Long.parseLong(value); break;
+            case "-f":  this.forks = Integer.parseInt(value); break;
+            default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if(this.iterations < 1) throw new IllegalArgumentException("-i < 1: " + this.iterations);
+
+        if(this.modes.isEmpty()) this.modes.addAll(Arrays.asList(Mode.values()));
+        if(this.types.isEmpty()) this.types.addAll(Arrays.asList(ElementType.values()));
+        if(this.dists.isEmpty()) this.dists.addAll(Arrays.asList(Distribution.values()));
+        if(this.sizes.isEmpty()) this.sizes.addAll(Arrays.asList(1000, 10000, 100000, 1000000, 10000000, 50000000));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Benchmark benchmark = new Benchmark();
+        benchmark.parse(args);
+        benchmark.run();
+    }
+}
@@ -0,0 +1,306 @@
+package javagrailsort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/********* External Grail sorting ************************/
+/*                                                       */
+/* Sorts files of fixed-width records that don't fit in  */
+/* memory:                                               */
+/*                                                       */
+/* - the input is read in chunks, each chunk is sorted   */
+/*   by RecordGrailSort with its dynamic buffer, and     */
+/*   spilled to a temp file as a sorted run. A chunk and */
+/*   its buffer together fill the memory budget;         */
+/* - runs are merged fanIn at a time, pass after pass,   */
+/*   until one pass can write the output. The memory     */
+/*   budget is split into one read-ahead buffer per run  */
+/*   and one write buffer.                               */
+/*                                                       */
+/* Runs are merged in input order and equal keys are     */
+/* taken from the earlier run first, so the whole sort   */
+/* is stable.                                            */
+/*                                                       */
+/*********************************************************/
+
+final public class ExternalGrailSort {
+
+    final private static int grailDefaultFanIn = 64;
+
+    final private RecordGrailSort sorter;
+    final private ByteOrder order;
+    final private long memoryBudget;
+    final private int fanIn;
+    final private Path tempDir;
+
+    // order - byte order of the keys in the files
+    // memoryBudget - bytes of direct memory for the chunk and its sort buffer, and later the merge buffers
+    public ExternalGrailSort(RecordGrailSort sorter, ByteOrder order, long memoryBudget) {
+        this(sorter, order, memoryBudget, grailDefaultFanIn, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    // fanIn - number of runs merged at once
+    // tempDir - directory for the spilled runs
+    public ExternalGrailSort(RecordGrailSort sorter, ByteOrder order, long memoryBudget, int fanIn, Path tempDir) {
+        if(fanIn < 2) throw new IllegalArgumentException("fanIn < 2: " + fanIn);
+        if(memoryBudget / sorter.getRecordWidth() < fanIn + 1) {
+            throw new IllegalArgumentException("memoryBudget " + memoryBudget + " can't buffer a record for each of "
+                                               + (fanIn + 1) + " merge streams");
+        }
+
+        this.sorter = sorter;
+        this.order = order;
+        this.memoryBudget = memoryBudget;
+        this.fanIn = fanIn;
+        this.tempDir = tempDir;
+    }
+
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    public int getFanIn() {
+        return this.fanIn;
+    }
+
+    public Path getTempDir() {
+        return this.tempDir;
+    }
+
+    public static final class Report {
+        private final long records;
+        private final int runs;
+        private final long bytesSpilled;
+        private final int mergePasses;
+
+        Report(long records, int runs, long bytesSpilled, int mergePasses) {
+            this.records = records;
+            this.runs = runs;
+            this.bytesSpilled = bytesSpilled;
+            this.mergePasses = mergePasses;
+        }
+
+        public long getRecords() {
+            return this.records;
+        }
+
+        // sorted runs spilled by the first phase
+        public int getRuns() {
+            return this.runs;
+        }
+
+        // bytes written to temp files, by the runs and by every merge pass but the last
+        public long getBytesSpilled() {
+            return this.bytesSpilled;
+        }
+
+        // 0 if the input fit in the memory budget and was sorted in memory
+        public int getMergePasses() {
+            return this.mergePasses;
+        }
+
+        @Override
+        public String toString() {
+            return this.records + " records, " + this.runs + " runs, " + this.bytesSpilled + " bytes spilled, "
+                   + this.mergePasses + " merge passes";
+        }
+    }
+
+    // input and output must be different files
+    public Report sort(Path input, Path output) throws IOException {
+        int width = this.sorter.getRecordWidth();
+        int budgetLen = (int) Math.min(this.memoryBudget, Integer.MAX_VALUE - 8) / width;
+        // the chunk's dynamic buffer is taken from the budget too, not from the pool
+        int chunkLen = (budgetLen - GrailSort.grailDynBufferLen(budgetLen)) * width;
+
+        ByteBuffer memory = ByteBuffer.allocateDirect(budgetLen * width).order(this.order);
+        ByteBuffer chunk = grailSlice(memory, 0, chunkLen);
+        ByteBuffer scratch = memory.duplicate();
+        scratch.position(chunkLen);
+        scratch = scratch.slice().order(this.order);
+        List<Path> runs = new ArrayList<>();
+        // every temp file, so a failed sort can clean up after itself
+        List<Path> temps = new ArrayList<>();
+
+        try(FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long size = in.size();
+            if(size % width != 0) {
+                throw new IllegalArgumentException(input + " is not a whole number of " + width + " byte records");
+            }
+
+            if(size <= chunkLen) {
+                grailReadFully(in, chunk);
+                chunk.flip();
+                this.sorter.grailSortWithScratch(chunk, scratch);
+                grailWriteFully(out, chunk);
+                return new Report(size / width, size == 0 ? 0 : 1, 0, 0);
+            }
+
+            long bytesSpilled = 0;
+            while(in.position() < size) {
+                chunk.clear();
+                grailReadFully(in, chunk);
+                chunk.flip();
+                this.sorter.grailSortWithScratch(chunk, scratch);
+
+                Path run = Files.createTempFile(this.tempDir, "grail", ".run");
+                temps.add(run);
+                runs.add(run);
+                try(FileChannel spill = FileChannel.open(run, StandardOpenOption.WRITE)) {
+                    grailWriteFully(spill, chunk);
+                }
+                bytesSpilled += chunk.limit();
+            }
+            int runCount = runs.size();
+
+            int mergePasses = 0;
+            while(runs.size() > this.fanIn) {
+                List<Path> merged = new ArrayList<>();
+
+                for(int i = 0; i < runs.size(); i += this.fanIn) {
+                    List<Path> group = runs.subList(i, Math.min(i + this.fanIn, runs.size()));
+                    if(group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+
+                    Path run = Files.createTempFile(this.tempDir, "grail", ".run");
+                    temps.add(run);
+                    merged.add(run);
+                    try(FileChannel spill = FileChannel.open(run, StandardOpenOption.WRITE)) {
+                        bytesSpilled += grailMerge(group, spill, memory);
+                    }
+                    for(Path done : group) Files.delete(done);
+                }
+                runs = merged;
+                mergePasses++;
+            }
+            grailMerge(runs, out, memory);
+            mergePasses++;
+
+            return new Report(size / width, runCount, bytesSpilled, mergePasses);
+        }
+        finally {
+            for(Path temp : temps) Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void grailReadFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining() && in.read(buffer) >= 0);
+    }
+
+    private static void grailWriteFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) out.write(buffer);
+    }
+
+    // a sorted run being read through its share of the memory budget
+    private static final class RunReader {
+        final FileChannel channel;
+        final ByteBuffer buffer;
+
+        RunReader(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        // returns false once the run is exhausted
+        boolean fill() throws IOException {
+            this.buffer.clear();
+            grailReadFully(this.channel, this.buffer);
+            this.buffer.flip();
+            return this.buffer.hasRemaining();
+        }
+    }
+
+    private ByteBuffer grailSlice(ByteBuffer memory, int index, int sliceLen) {
+        ByteBuffer slice = memory.duplicate();
+        slice.limit(index * sliceLen + sliceLen).position(index * sliceLen);
+        return slice.slice().order(this.order);
+    }
+
+    // merges the runs in order into out; returns the bytes written
+    private long grailMerge(List<Path> runs, FileChannel out, ByteBuffer memory) throws IOException {
+        int width = this.sorter.getRecordWidth();
+        int keyOffset = this.sorter.getKeyOffset();
+        RecordGrailSort.KeyType keyType = this.sorter.getKeyType();
+
+        int k = runs.size();
+        int sliceLen = memory.capacity() / (k + 1) / width * width;
+
+        RunReader[] readers = new RunReader[k];
+        ByteBuffer output = grailSlice(memory, k, sliceLen);
+        long written = 0;
+
+        try {
+            // heap of the runs that still have records, ordered by their current key,
+            // then by run index, which keeps equal keys in input order
+            int[] heap = new int[k];
+            int heapLen = 0;
+
+            for(int i = 0; i < k; i++) {
+                readers[i] = new RunReader(FileChannel.open(runs.get(i), StandardOpenOption.READ), grailSlice(memory, i, sliceLen));
+                if(readers[i].fill()) heap[heapLen++] = i;
+            }
+            for(int i = heapLen / 2 - 1; i >= 0; i--) grailSiftDown(readers, heap, heapLen, i, keyOffset, keyType);
+
+            while(heapLen != 0) {
+                ByteBuffer top = readers[heap[0]].buffer;
+
+                if(!output.hasRemaining()) {
+                    output.flip();
+                    written += output.remaining();
+                    grailWriteFully(out, output);
+                    output.clear();
+                }
+                int pos = top.position(), end = pos + width;
+                for(; pos + 8 <= end; pos += 8) output.putLong(top.getLong(pos));
+                for(; pos < end; pos++) output.put(top.get(pos));
+                top.position(end);
+
+                if(!top.hasRemaining() && !readers[heap[0]].fill()) heap[0] = heap[--heapLen];
+                grailSiftDown(readers, heap, heapLen, 0, keyOffset, keyType);
+            }
+            output.flip();
+            written += output.remaining();
+            grailWriteFully(out, output);
+        }
+        finally {
+            for(RunReader reader : readers) {
+                if(reader != null) reader.channel.close();
+            }
+        }
+        return written;
+    }
+
+    private static boolean grailLess(RunReader[] readers, int a, int b, int keyOffset, RecordGrailSort.KeyType keyType) {
+        ByteBuffer bufA = readers[a].buffer, bufB = readers[b].buffer;
+        int cmp = keyType.compare(bufA, bufA.position() + keyOffset, bufB, bufB.position() + keyOffset);
+        return cmp < 0 || (cmp == 0 && a < b);
+    }
+
+    private static void grailSiftDown(RunReader[] readers, int[] heap, int heapLen, int i, int keyOffset,
+                                      RecordGrailSort.KeyType keyType) {
+        int run = heap[i];
+
+        while(2 * i + 1 < heapLen) {
+            int child = 2 * i + 1;
+            if(child + 1 < heapLen && grailLess(readers, heap[child + 1], heap[child], keyOffset, keyType)) child++;
+            if(!grailLess(readers, heap[child], run, keyOffset, keyType)) break;
+
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = run;
+    }
+}
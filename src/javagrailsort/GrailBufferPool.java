@@ -0,0 +1,78 @@
+package javagrailsort;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+// Reusable external buffers for the buffered sort modes.
+//
+// Buffers are parked in a small lock-free table of slots instead of ThreadLocals,
+// so any thread (pool worker, short-lived request thread or virtual thread) can
+// borrow one, and idle buffers are not pinned to threads that may never sort again.
+// A sort borrows a buffer with acquire() and hands it back with release(); when
+// every slot is taken the buffer is simply dropped for the GC.
+final class GrailBufferPool<A> {
+
+    static final GrailBufferPool<Object[]> objects = new GrailBufferPool<>(Object[]::new, b -> b.length);
+    static final GrailBufferPool<int[]> ints = new GrailBufferPool<>(int[]::new, b -> b.length);
+    static final GrailBufferPool<long[]> longs = new GrailBufferPool<>(long[]::new, b -> b.length);
+    static final GrailBufferPool<float[]> floats = new GrailBufferPool<>(float[]::new, b -> b.length);
+    static final GrailBufferPool<double[]> doubles = new GrailBufferPool<>(double[]::new, b -> b.length);
+    // record buffers are direct, since heap ByteBuffers assemble every long byte by byte
+    static final GrailBufferPool<ByteBuffer> bytes = new GrailBufferPool<>(ByteBuffer::allocateDirect, ByteBuffer::capacity);
+
+    private final IntFunction<A> allocator;
+    private final ToIntFunction<A> length;
+    private final AtomicReferenceArray<A> slots;
+    private final int mask;
+
+    private GrailBufferPool(IntFunction<A> allocator, ToIntFunction<A> length) {
+        int slotCount = 1;
+        while(slotCount < 2 * Runtime.getRuntime().availableProcessors()) slotCount *= 2;
+
+        this.allocator = allocator;
+        this.length = length;
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.mask = slotCount - 1;
+    }
+
+    // threads start probing at different slots so they rarely contend
+    private int grailProbe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id * 0x9E3779B97F4A7C15L >>> 40) & this.mask;
+    }
+
+    // returns a buffer of at least len items
+    A acquire(int len) {
+        int probe = grailProbe();
+
+        for(int i = 0; i <= this.mask; i++) {
+            int slot = (probe + i) & this.mask;
+            A buffer = this.slots.get(slot);
+
+            if(buffer != null && this.length.applyAsInt(buffer) >= len && this.slots.compareAndSet(slot, buffer, null)) {
+                return buffer;
+            }
+        }
+        return this.allocator.apply(len);
+    }
+
+    // Object buffers must be cleared by the caller first, so the pool never keeps sorted items alive
+    void release(A buffer) {
+        int probe = grailProbe();
+        int len = this.length.applyAsInt(buffer);
+
+        for(int i = 0; i <= this.mask; i++) {
+            int slot = (probe + i) & this.mask;
+            if(this.slots.get(slot) == null && this.slots.compareAndSet(slot, null, buffer)) return;
+        }
+        // every slot is taken: keep the larger buffer, since it fits more sorts
+        for(int i = 0; i <= this.mask; i++) {
+            int slot = (probe + i) & this.mask;
+            A parked = this.slots.get(slot);
+
+            if(parked != null && this.length.applyAsInt(parked) < len && this.slots.compareAndSet(slot, parked, buffer)) return;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package javagrailsort;
+
+import java.lang.reflect.Array;
+
+// The attached columns of a column sort (IntColumnGrailSort, LongColumnGrailSort).
+// Every swap, rotation and buffer move the sort makes on its key column is made on
+// each attached column too, at the same positions, so the rows stay together without
+// ever being materialized. Columns may be int[], long[], float[] or double[], in any
+// mix, and each one borrows an external buffer of its own type.
+final class GrailColumns {
+
+    private abstract static class Column {
+        final Object array;
+        Object buffer;
+
+        Column(Object array) {
+            this.array = array;
+        }
+
+        abstract void swap(int a, int b);
+
+        abstract void move(int to, int from);
+
+        abstract void swapRange(int a, int b, int len);
+
+        // arr[pos] goes to pos + len, arr[pos + 1, pos + len] move one to the left
+        abstract void shiftLeft(int pos, int len);
+
+        // arr[pos + len] goes to pos, arr[pos, pos + len - 1] move one to the right
+        abstract void shiftRight(int pos, int len);
+
+        abstract void acquire(int bufferLen);
+
+        abstract void release();
+    }
+
+    private static final class IntColumn extends Column {
+        final int[] arr;
+
+        IntColumn(int[] arr) {
+            super(arr);
+            this.arr = arr;
+        }
+
+        @Override
+        void swap(int a, int b) {
+            int temp = this.arr[a];
+            this.arr[a] = this.arr[b];
+            this.arr[b] = temp;
+        }
+
+        @Override
+        void move(int to, int from) {
+            this.arr[to] = this.arr[from];
+        }
+
+        @Override
+        void swapRange(int a, int b, int len) {
+            while(len-- != 0) swap(a++, b++);
+        }
+
+        @Override
+        void shiftLeft(int pos, int len) {
+            int item = this.arr[pos];
+            System.arraycopy(this.arr, pos + 1, this.arr, pos, len);
+            this.arr[pos + len] = item;
+        }
+
+        @Override
+        void shiftRight(int pos, int len) {
+            int item = this.arr[pos + len];
+            System.arraycopy(this.arr, pos, this.arr, pos + 1, len);
+            this.arr[pos] = item;
+        }
+
+        @Override
+        void acquire(int bufferLen) {
+            this.buffer = GrailBufferPool.ints.acquire(bufferLen);
+        }
+
+        @Override
+        void release() {
+            GrailBufferPool.ints.release((int[]) this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        final long[] arr;
+
+        LongColumn(long[] arr) {
+            super(arr);
+            this.arr = arr;
+        }
+
+        @Override
+        void swap(int a, int b) {
+            long temp = this.arr[a];
+            this.arr[a] = this.arr[b];
+            this.arr[b] = temp;
+        }
+
+        @Override
+        void move(int to, int from) {
+            this.arr[to] = this.arr[from];
+        }
+
+        @Override
+        void swapRange(int a, int b, int len) {
+            while(len-- != 0) swap(a++, b++);
+        }
+
+        @Override
+        void shiftLeft(int pos, int len) {
+            long item = this.arr[pos];
+            System.arraycopy(this.arr, pos + 1, this.arr, pos, len);
+            this.arr[pos + len] = item;
+        }
+
+        @Override
+        void shiftRight(int pos, int len) {
+            long item = this.arr[pos + len];
+            System.arraycopy(this.arr, pos, this.arr, pos + 1, len);
+            this.arr[pos] = item;
+        }
+
+        @Override
+        void acquire(int bufferLen) {
+            this.buffer = GrailBufferPool.longs.acquire(bufferLen);
+        }
+
+        @Override
+        void release() {
+            GrailBufferPool.longs.release((long[]) this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    private static final class FloatColumn extends Column {
+        final float[] arr;
+
+        FloatColumn(float[] arr) {
+            super(arr);
+            this.arr = arr;
+        }
+
+        @Override
+        void swap(int a, int b) {
+            float temp = this.arr[a];
+            this.arr[a] = this.arr[b];
+            this.arr[b] = temp;
+        }
+
+        @Override
+        void move(int to, int from) {
+            this.arr[to] = this.arr[from];
+        }
+
+        @Override
+        void swapRange(int a, int b, int len) {
+            while(len-- != 0) swap(a++, b++);
+        }
+
+        @Override
+        void shiftLeft(int pos, int len) {
+            float item = this.arr[pos];
+            System.arraycopy(this.arr, pos + 1, this.arr, pos, len);
+            this.arr[pos + len] = item;
+        }
+
+        @Override
+        void shiftRight(int pos, int len) {
+            float item = this.arr[pos + len];
+            System.arraycopy(this.arr, pos, this.arr, pos + 1, len);
+            this.arr[pos] = item;
+        }
+
+        @Override
+        void acquire(int bufferLen) {
+            this.buffer = GrailBufferPool.floats.acquire(bufferLen);
+        }
+
+        @Override
+        void release() {
+            GrailBufferPool.floats.release((float[]) this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        final double[] arr;
+
+        DoubleColumn(double[] arr) {
+            super(arr);
+            this.arr = arr;
+        }
+
+        @Override
+        void swap(int a, int b) {
+            double temp = this.arr[a];
+            this.arr[a] = this.arr[b];
+            this.arr[b] = temp;
+        }
+
+        @Override
+        void move(int to, int from) {
+            this.arr[to] = this.arr[from];
+        }
+
+        @Override
+        void swapRange(int a, int b, int len) {
+            while(len-- != 0) swap(a++, b++);
+        }
+
+        @Override
+        void shiftLeft(int pos, int len) {
+            double item = this.arr[pos];
+            System.arraycopy(this.arr, pos + 1, this.arr, pos, len);
+            this.arr[pos + len] = item;
+        }
+
+        @Override
+        void shiftRight(int pos, int len) {
+            double item = this.arr[pos + len];
+            System.arraycopy(this.arr, pos, this.arr, pos + 1, len);
+            this.arr[pos] = item;
+        }
+
+        @Override
+        void acquire(int bufferLen) {
+            this.buffer = GrailBufferPool.doubles.acquire(bufferLen);
+        }
+
+        @Override
+        void release() {
+            GrailBufferPool.doubles.release((double[]) this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    private final Column[] columns;
+
+    private GrailColumns(Column[] columns) {
+        this.columns = columns;
+    }
+
+    // Wraps the columns attached to keys. Each must be an int[], long[], float[] or
+    // double[] as long as keys, and no array may appear twice or be keys itself.
+    static GrailColumns grailAttach(Object keys, int length, Object[] columns) {
+        Column[] attached = new Column[columns.length];
+
+        for(int i = 0; i < columns.length; i++) {
+            Object column = columns[i];
+
+            if(column == null) throw new NullPointerException("column " + i + " is null");
+            if(column == keys) throw new IllegalArgumentException("column " + i + " is the key column");
+            for(int j = 0; j < i; j++) {
+                if(columns[j] == column) throw new IllegalArgumentException("columns " + j + " and " + i + " are the same array");
+            }
+
+            if(column instanceof int[]) attached[i] = new IntColumn((int[]) column);
+            else if(column instanceof long[]) attached[i] = new LongColumn((long[]) column);
+            else if(column instanceof float[]) attached[i] = new FloatColumn((float[]) column);
+            else if(column instanceof double[]) attached[i] = new DoubleColumn((double[]) column);
+            else {
+                throw new IllegalArgumentException("column " + i + " is a " + column.getClass().getSimpleName()
+                                                   + ", not an int[], long[], float[] or double[]");
+            }
+
+            int columnLength = Array.getLength(column);
+            if(columnLength != length) {
+                throw new IllegalArgumentException("column " + i + " has " + columnLength + " rows, the keys have " + length);
+            }
+        }
+        return new GrailColumns(attached);
+    }
+
+    void swap(int a, int b) {
+        for(Column column : this.columns) column.swap(a, b);
+    }
+
+    void swapRange(int a, int b, int len) {
+        for(Column column : this.columns) column.swapRange(a, b, len);
+    }
+
+    void move(int to, int from) {
+        for(Column column : this.columns) column.move(to, from);
+    }
+
+    void copy(int from, int to, int len) {
+        for(Column column : this.columns) System.arraycopy(column.array, from, column.array, to, len);
+    }
+
+    void toBuffer(int from, int bufferPos, int len) {
+        for(Column column : this.columns) System.arraycopy(column.array, from, column.buffer, bufferPos, len);
+    }
+
+    void fromBuffer(int bufferPos, int to, int len) {
+        for(Column column : this.columns) System.arraycopy(column.buffer, bufferPos, column.array, to, len);
+    }
+
+    void shiftLeft(int pos, int len) {
+        for(Column column : this.columns) column.shiftLeft(pos, len);
+    }
+
+    void shiftRight(int pos, int len) {
+        for(Column column : this.columns) column.shiftRight(pos, len);
+    }
+
+    // every column borrows a buffer of bufferLen items of its own type
+    void acquire(int bufferLen) {
+        for(Column column : this.columns) column.acquire(bufferLen);
+    }
+
+    void release() {
+        for(Column column : this.columns) {
+            if(column.buffer != null) column.release();
+        }
+    }
+}
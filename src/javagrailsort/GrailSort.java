@@ -1,5 +1,9 @@
 package javagrailsort;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
 /********* Grail sorting *********************************/
 /*                                                       */
 /* (c) 2013 by Andrey Astrelin                           */
@@ -8,8 +12,14 @@ package javagrailsort;
 /* Stable sorting that works in O(N*log(N)) worst time   */
 /* and uses O(1) extra memory                            */
 /*                                                       */
-/* Define SortType / SortComparator                      */
-/* and then call GrailSort() function                    */
+/* Create a GrailSort<T> with a Comparator (or use the   */
+/* natural ordering) and then call GrailSort() function  */
+/* For one-off sorts use GrailSort.sort()                */
+/*                                                       */
+/* A GrailSort<T> is immutable and holds no per-sort     */
+/* state, so one instance can be shared by any number of */
+/* threads. External buffers are borrowed from a shared  */
+/* GrailBufferPool instead of being allocated per call.  */
 /*                                                       */
 /* For sorting w/ fixed external buffer (512 items)      */
 /* use GrailSortWithBuffer()                             */
@@ -17,28 +27,177 @@ package javagrailsort;
 /* For sorting w/ dynamic external buffer (sqrt(length)) */
 /* use GrailSortWithDynBuffer()                          */
 /*                                                       */
+/* For a path picked from a sample of the input          */
+/* use GrailSortAuto()                                   */
+/*                                                       */
+/* For adaptive sorting of data made of sorted runs      */
+/* use GrailSortAdaptive()                               */
+/*                                                       */
+/* For many small sorts at once, sharing one buffer      */
+/* use GrailSortAll() or GrailSortSlices()               */
+/*                                                       */
+/* For merging adjacent sorted runs in place             */
+/* use GrailMergeSortedRuns()                            */
+/*                                                       */
 /*********************************************************/
 
-final public class GrailSort {
+final public class GrailSort<T> {
+
+    final private static int grailStaticBufferLen = 512;
+
+    // Rotations whose shorter side is at most grailCycleRotateMax items, and at most
+    // 1 / grailSkewedRotation of the whole, are done by cycle leader
+    final private static int grailCycleRotateMax = 32;
+    final private static int grailSkewedRotation = 8;
+
+    // Without a buffer, the few keys sort partitions ranges of this many items or less in place
+    final private static int grailPartitionRunLen = 16;
+
+    // length of the runs grailMergeSort starts from
+    final private static int grailMergeSortRunLen = 16;
+
+    // A merge that takes this many items in a row from one run gallops through that
+    // run instead. The threshold then adapts per merge, as in TimSort.
+    final private static int grailMinGallop = 7;
+
+    // A batch of sorts borrows one buffer of half its longest array, clamped to these
+    // lengths. Either way the buffer passes grailMergeSortFits for every array in the
+    // batch, so each sort of more than 32 items is a plain merge sort.
+    final private static int grailBatchBufferMin = 2 * grailStaticBufferLen;
+    final private static int grailBatchBufferMax = 1 << 16;
+
+    // grailSortAuto's default buffer, in dynamic buffers: still O(sqrt(n)) items, and
+    // larger buffers made the merge sort only a few percent faster
+    final private static int grailAutoBufferFactor = 8;
+
+    // From a buffer of this many items on the merge sort beats the block sort on any
+    // input, and from grailAutoFewKeysMergeSortMin on when there are too few distinct
+    // items for the block sort's keys and internal buffer
+    final private static int grailAutoMergeSortMin = 128;
+    final private static int grailAutoFewKeysMergeSortMin = 32;
+
+    // grailSortAuto sorts a sample of at most this many items to estimate the distinct items
+    final private static int grailAutoSampleMax = 256;
+
+    final private Comparator<? super T> grail;
+    final private GrailSortMetrics metrics;
 
-    final private int grailStaticBufferLen = 512;
+    public GrailSort() {
+        this.grail = NaturalOrder.INSTANCE;
+        this.metrics = null;
+    }
+
+    // A null comparator means natural ordering, as in Arrays.sort
+    public GrailSort(Comparator<? super T> cmp) {
+        this.grail = cmp != null ? cmp : NaturalOrder.INSTANCE;
+        this.metrics = null;
+    }
+
+    // Instrumented sorter: every sort adds its counters and phase timings to metrics.
+    // Unlike other GrailSorts, it must not be used by two threads at once.
+    public GrailSort(Comparator<? super T> cmp, GrailSortMetrics metrics) {
+        Comparator<? super T> order = cmp != null ? cmp : NaturalOrder.INSTANCE;
+
+        this.grail = metrics != null ? metrics.grailCounting(order) : order;
+        this.metrics = metrics;
+    }
+
+    private static final GrailSort<Object> naturalSorter = new GrailSort<>();
+
+    @SuppressWarnings("unchecked")
+    private static <T> GrailSort<T> grailNaturalSorter() {
+        return (GrailSort<T>) naturalSorter;
+    }
+
+    // Used when no Comparator is given; elements must implement Comparable,
+    // otherwise a ClassCastException is thrown just like with Arrays.sort(Object[])
+    private static final class NaturalOrder implements Comparator<Object> {
+        static final NaturalOrder INSTANCE = new NaturalOrder();
 
-    private SortComparator grail;
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Object a, Object b) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+    }
 
-    private static void grailSwap(SortType[] arr, int a, int b) {   
-        SortType temp = arr[a];
+    private static <T> void grailSwap(T[] arr, int a, int b) {   
+        T temp = arr[a];
         arr[a] = arr[b];
         arr[b] = temp;
     }
 
-    private static void grailMultiSwap(SortType[] arr, int a, int b, int swapsLeft) {
+    private void grailMultiSwap(T[] arr, int a, int b, int swapsLeft) {
+        grailCountSwaps(swapsLeft);
+
         while(swapsLeft != 0) { 
             grailSwap(arr, a++, b++);
             swapsLeft--;
         }
     }
 
-    private static void grailRotate(SortType[] array, int pos, int lenA, int lenB) {
+    /***** Rotations *****/
+
+    // arr[pos, pos + lenA - 1] ++ arr[pos + lenA, pos + lenA + lenB - 1] -> B ++ A
+    // The strategy is picked by the lengths of the two sides:
+    // - the shorter side fits in the external buffer: it is parked there and the
+    //   longer side moves with one System.arraycopy;
+    // - one side is a single item: it waits in a local while the other side moves;
+    // - a short side against a much longer one: cycle leader, which moves every
+    //   item once, and with a short side its cycles walk the array almost in order;
+    // - otherwise Gries-Mills block swaps.
+    void grailRotate(T[] array, int pos, int lenA, int lenB) {
+        grailRotate(array, pos, lenA, lenB, null, 0, 0);
+    }
+
+    // buffer[bufferPos, bufferPos + bufferLen - 1] - scratch space, its contents are overwritten
+    void grailRotate(T[] array, int pos, int lenA, int lenB, T[] buffer, int bufferPos, int bufferLen) {
+        if(lenA == 0 || lenB == 0) return;
+        if(this.metrics != null) this.metrics.grailRotation(lenA, lenB);
+
+        if(lenA <= lenB) {
+            if(lenA <= bufferLen) {
+                System.arraycopy(array, pos, buffer, bufferPos, lenA);
+                System.arraycopy(array, pos + lenA, array, pos, lenB);
+                System.arraycopy(buffer, bufferPos, array, pos + lenB, lenA);
+                grailCountMoves(lenB + 2 * lenA);
+                return;
+            }
+            if(lenA == 1) {
+                T item = array[pos];
+                System.arraycopy(array, pos + 1, array, pos, lenB);
+                array[pos + lenB] = item;
+                grailCountMoves(lenB + 1);
+                return;
+            }
+        }
+        else {
+            if(lenB <= bufferLen) {
+                System.arraycopy(array, pos + lenA, buffer, bufferPos, lenB);
+                System.arraycopy(array, pos, array, pos + lenB, lenA);
+                System.arraycopy(buffer, bufferPos, array, pos, lenB);
+                grailCountMoves(lenA + 2 * lenB);
+                return;
+            }
+            if(lenB == 1) {
+                T item = array[pos + lenA];
+                System.arraycopy(array, pos, array, pos + 1, lenA);
+                array[pos] = item;
+                grailCountMoves(lenA + 1);
+                return;
+            }
+        }
+
+        int shortLen = lenA < lenB ? lenA : lenB;
+
+        if(shortLen <= grailCycleRotateMax && shortLen * grailSkewedRotation <= lenA + lenB) {
+            grailCycleRotate(array, pos, lenA, lenB);
+        }
+        else grailBlockSwapRotate(array, pos, lenA, lenB);
+    }
+
+    // Gries-Mills: swaps the shorter side into place and repeats on the rest
+    private void grailBlockSwapRotate(T[] array, int pos, int lenA, int lenB) {
         while(lenA != 0 && lenB != 0) {
             if(lenA <= lenB) {
                 grailMultiSwap(array, pos, pos + lenA, lenA);
@@ -51,17 +210,49 @@ final public class GrailSort {
             }
         }
     }
+
+    // Juggling: gcd(lenA, lenB) cycles, each item moved straight to its final place
+    private void grailCycleRotate(T[] array, int pos, int lenA, int lenB) {
+        int len = lenA + lenB;
+        int cycles = lenA, rest = lenB;
+
+        while(rest != 0) {
+            int temp = cycles % rest;
+            cycles = rest;
+            rest = temp;
+        }
+
+        for(int start = 0; start < cycles; start++) {
+            T item = array[pos + start];
+            int dist = start;
+
+            while(true) {
+                int next = dist + lenA;
+                if(next >= len) next -= len;
+                if(next == start) break;
+
+                array[pos + dist] = array[pos + next];
+                dist = next;
+            }
+            array[pos + dist] = item;
+        }
+        grailCountMoves(len + cycles);
+    }
+
+    /***** End Rotations *****/
     
     // Thanks to https://jeffreystedfast.blogspot.com/2007/02/binary-insertion-sort.html for
     // a great reference on InsertSort optimizations!!
     
     @SuppressWarnings("fallthrough")
-    private void grailInsertSort(SortType[] arr, int pos, int len) {
+    private void grailInsertSort(T[] arr, int pos, int len) {
+        int moves = 0;
+
         for(int i = 1; i < len; i++) {
-            int insertPos = grailBinSearch(arr, pos, pos + i, pos + i, false);
+            int insertPos = pos + grailBinSearch(arr, pos, i, pos + i, false);
 
-            if(insertPos < i) {
-                SortType item = arr[pos + i];
+            if(insertPos < pos + i) {
+                T item = arr[pos + i];
 
                 // Used TimSort's Binary Insert as a reference here.
                 int shifts = (pos + i) - insertPos;
@@ -72,12 +263,15 @@ final public class GrailSort {
                     default: System.arraycopy(arr, insertPos, arr, insertPos + 1, shifts);
                 }
                 arr[insertPos] = item;
+
+                moves += shifts + 2;
             }
         }
+        grailCountMoves(moves);
     }
 
     //boolean argument determines direction
-    private int grailBinSearch(SortType[] arr, int pos, int len, int keyPos, boolean isLeft) {
+    int grailBinSearch(T[] arr, int pos, int len, int keyPos, boolean isLeft) {
         int left = -1, right = len;
 
         while(left < right - 1) {
@@ -99,39 +293,130 @@ final public class GrailSort {
         return right;
     }
 
-    // cost: 2 * len + numKeys^2 / 2
-    private int grailGetKeys(SortType[] arr, int pos, int len, int numKeys) {
+    // Same result as grailBinSearch for a key from outside arr[pos, pos + len - 1], but
+    // probes 1, 3, 7, 15... items in before the binary search, so it takes O(log k)
+    // comparisons when the answer is k
+    int grailGallop(T[] arr, int pos, int len, T key, boolean isLeft) {
+        int left = -1, right = 0, step = 1;
+
+        while(right < len) {
+            int cmp = this.grail.compare(arr[pos + right], key);
+            if(isLeft ? cmp >= 0 : cmp > 0) break;
+
+            left = right;
+            right = len - right > step ? right + step : len;
+            step *= 2;
+        }
+        return grailBinSearchBetween(arr, pos, left, right, key, isLeft);
+    }
+
+    // grailGallop probing from the end: 1, 2, 4, 8... items back
+    int grailGallopBack(T[] arr, int pos, int len, T key, boolean isLeft) {
+        int left = len - 1, right = len, step = 1;
+
+        while(left >= 0) {
+            int cmp = this.grail.compare(arr[pos + left], key);
+            if(isLeft ? cmp < 0 : cmp <= 0) break;
+
+            right = left;
+            left = left >= step ? left - step : -1;
+            step *= 2;
+        }
+        return grailBinSearchBetween(arr, pos, left, right, key, isLeft);
+    }
+
+    // the answer is known to be in (left, right]
+    private int grailBinSearchBetween(T[] arr, int pos, int left, int right, T key, boolean isLeft) {
+        while(left < right - 1) {
+            int mid = left + ((right - left) / 2);
+            int cmp = this.grail.compare(arr[pos + mid], key);
+
+            if(isLeft ? cmp >= 0 : cmp > 0) right = mid;
+            else left = mid;
+        }
+        return right;
+    }
+
+    // a gallop that skipped grailMinGallop items or more makes the next one start
+    // sooner; a short one was wasted comparisons, and makes it start later
+    private static int grailNextMinGallop(int minGallop, int count) {
+        if(count >= grailMinGallop) return minGallop > 1 ? minGallop - 1 : 1;
+        return minGallop + 2;
+    }
+
+    // Keys are gathered in two levels. New keys go into a small sorted pending
+    // block that rolls along behind the scan; every ~sqrt(numKeys) keys it is
+    // merged into the main key block, so the main block rolls forward only
+    // ~sqrt(numKeys) times instead of once per key.
+    // cost: 2 * len + O(numKeys^1.5)
+    // buffer - scratch space for the rotations, null if there is none
+    private int grailGetKeys(T[] arr, int pos, int len, int numKeys, T[] buffer, int bufferPos, int bufferLen) {
+        int pendingMax = (int) Math.sqrt(numKeys) + 1;
+        int keysPos = 0, keysLen = 0;
+        int pendingPos = 0, pendingLen = 1;  // first key is always here
         int dist = 1;
-        int foundKeys = 1, firstKey = 0;  // first key is always here
 
-        while(dist < len && foundKeys < numKeys) {
+        while(dist < len && keysLen + pendingLen < numKeys) {
             //Binary Search left
-            int loc = grailBinSearch(arr, pos + firstKey, foundKeys, pos + dist, true);
-            
-            if(loc == foundKeys || this.grail.compare(arr[pos + dist], arr[pos + (firstKey + loc)]) != 0) {
-                grailRotate(arr, pos + firstKey, foundKeys, dist - (firstKey + foundKeys));
-                
-                firstKey = dist - foundKeys;
-                
-                grailRotate(arr, pos + (firstKey + loc), foundKeys - loc, 1);
-                foundKeys++;
+            int loc = grailBinSearch(arr, pos + keysPos, keysLen, pos + dist, true);
+
+            if(loc == keysLen || this.grail.compare(arr[pos + dist], arr[pos + (keysPos + loc)]) != 0) {
+                //Binary Search left
+                loc = grailBinSearch(arr, pos + pendingPos, pendingLen, pos + dist, true);
+
+                if(loc == pendingLen || this.grail.compare(arr[pos + dist], arr[pos + (pendingPos + loc)]) != 0) {
+                    grailRotate(arr, pos + pendingPos, pendingLen, dist - (pendingPos + pendingLen), buffer, bufferPos, bufferLen);
+
+                    pendingPos = dist - pendingLen;
+
+                    grailRotate(arr, pos + (pendingPos + loc), pendingLen - loc, 1);
+                    pendingLen++;
+
+                    if(pendingLen == pendingMax) {
+                        keysPos = grailMergeKeys(arr, pos, keysPos, keysLen, pendingPos, pendingLen, buffer, bufferPos, bufferLen);
+                        keysLen += pendingLen;
+
+                        pendingPos += pendingLen;
+                        pendingLen = 0;
+                    }
+                }
             }
             dist++;
         }
-        grailRotate(arr, pos, firstKey, foundKeys);
+        keysPos = grailMergeKeys(arr, pos, keysPos, keysLen, pendingPos, pendingLen, buffer, bufferPos, bufferLen);
+        keysLen += pendingLen;
+
+        grailRotate(arr, pos, keysPos, keysLen, buffer, bufferPos, bufferLen);
 
-        return foundKeys;
+        return keysLen;
+    }
+
+    // rolls the main key block up to the pending block and merges them;
+    // returns the new position of the main key block
+    private int grailMergeKeys(T[] arr, int pos, int keysPos, int keysLen, int pendingPos, int pendingLen,
+                               T[] buffer, int bufferPos, int bufferLen) {
+        grailRotate(arr, pos + keysPos, keysLen, pendingPos - (keysPos + keysLen), buffer, bufferPos, bufferLen);
+
+        keysPos = pendingPos - keysLen;
+
+        // keys are distinct, so the merge can't break stability
+        grailMergeWithoutBuffer(arr, pos + keysPos, keysLen, pendingLen, buffer, bufferPos, bufferLen);
+
+        return keysPos;
     }
 
     // cost: min(len1, len2)^2 + max(len1, len2)
-    private void grailMergeWithoutBuffer(SortType[] arr, int pos, int len1, int len2) {
+    // The searches gallop from the near end of the longer run, where skewed and
+    // nearly ordered merges find their answer.
+    // buffer - scratch space for the rotations, null if there is none
+    private void grailMergeWithoutBuffer(T[] arr, int pos, int len1, int len2, T[] buffer, int bufferPos, int bufferLen) {
         if(len1 < len2) {
             while(len1 != 0) {
-                //Binary Search left
-                int loc = grailBinSearch(arr, pos + len1, len2, pos, true);
+                //Gallop left
+                int loc = grailGallop(arr, pos + len1, len2, arr[pos], true);
             
                 if(loc != 0) {
-                    grailRotate(arr, pos, len1, loc);
+                    grailRotate(arr, pos, len1, loc, buffer, bufferPos, bufferLen);
                     
                     pos += loc;
                     len2 -= loc;
@@ -147,11 +432,11 @@ final public class GrailSort {
         } 
         else {
             while(len2 != 0) {
-                //Binary Search right
-                int loc = grailBinSearch(arr, pos, len1, pos + (len1 + len2 - 1), false);
+                //Gallop right, from the end
+                int loc = grailGallopBack(arr, pos, len1, arr[pos + (len1 + len2 - 1)], false);
                
                 if(loc != len1) {
-                    grailRotate(arr, pos + loc, len1 - loc, len2);
+                    grailRotate(arr, pos + loc, len1 - loc, len2, buffer, bufferPos, bufferLen);
                     len1 = loc;
                 }
                 
@@ -170,14 +455,16 @@ final public class GrailSort {
     // aBlockCount are regular blocks from stream A.
     // lastLen is length of last (irregular) block from stream B, that should go before aBlockCount blocks.
     // lastLen = 0 requires aBlockCount = 0 (no irregular blocks). lastLen > 0, aBlockCount = 0 is possible.
-    private void grailMergeBuffersLeft(SortType[] arr, int keysPos, int midkey, int pos, int blockCount, int blockLen,
-                                              boolean havebuf, int aBlockCount, int lastLen) {
+    // buffer - scratch space for the rotations (if not havebuf), null if there is none
+    private void grailMergeBuffersLeft(T[] arr, int keysPos, int midkey, int pos, int blockCount, int blockLen,
+                                              boolean havebuf, int aBlockCount, int lastLen,
+                                              T[] buffer, int bufferPos, int bufferLen) {
 
         if(blockCount == 0) {
             int aBlocksLen = aBlockCount * blockLen;
             
             if(havebuf) grailMergeLeft(arr, pos, aBlocksLen, lastLen, 0 - blockLen);
-            else grailMergeWithoutBuffer(arr, pos, aBlocksLen, lastLen);
+            else grailMergeWithoutBuffer(arr, pos, aBlocksLen, lastLen, buffer, bufferPos, bufferLen);
             
             return;
         }
@@ -200,16 +487,17 @@ final public class GrailSort {
             } 
             else {
                 if(havebuf) {
-                    GrailState results = grailSmartMergeWithBuffer(arr, pos + restToProcess, leftOverLen, leftOverFrag, blockLen);
+                    int results = grailSmartMergeWithBuffer(arr, pos + restToProcess, leftOverLen, leftOverFrag, blockLen);
                  
-                    leftOverLen = results.getLeftOverLen();
-                    leftOverFrag = results.getLeftOverFrag();
+                    leftOverLen = results >>> 1;
+                    leftOverFrag = results & 1;
                 } 
                 else {
-                    GrailState results = grailSmartMergeWithoutBuffer(arr, pos + restToProcess, leftOverLen, leftOverFrag, blockLen);
+                    int results = grailSmartMergeWithoutBuffer(arr, pos + restToProcess, leftOverLen, leftOverFrag, blockLen,
+                                                               buffer, bufferPos, bufferLen);
                     
-                    leftOverLen = results.getLeftOverLen();
-                    leftOverFrag = results.getLeftOverFrag();
+                    leftOverLen = results >>> 1;
+                    leftOverFrag = results & 1;
                 }
             }
         }
@@ -227,7 +515,7 @@ final public class GrailSort {
             else leftOverLen += blockLen * aBlockCount;
 
             if(havebuf) grailMergeLeft(arr, pos + restToProcess, leftOverLen, lastLen, 0 - blockLen);
-            else grailMergeWithoutBuffer(arr, pos + restToProcess, leftOverLen, lastLen);
+            else grailMergeWithoutBuffer(arr, pos + restToProcess, leftOverLen, lastLen, buffer, bufferPos, bufferLen);
         } 
         else {
             if(havebuf) grailMultiSwap(arr, pos + restToProcess, pos + (restToProcess - blockLen), leftOverLen);
@@ -236,85 +524,163 @@ final public class GrailSort {
 
     // arr[dist..-1] - buffer, arr[0, leftLen - 1] ++ arr[leftLen, leftLen + rightLen - 1]
     // -> arr[dist, dist + leftLen + rightLen - 1]
-    private void grailMergeLeft(SortType[] arr, int pos, int leftLen, int rightLen, int dist) {
+    private void grailMergeLeft(T[] arr, int pos, int leftLen, int rightLen, int dist) {
         int left = 0, right = leftLen;
+        int minGallop = grailMinGallop, leftWins = 0, rightWins = 0;
 
         rightLen += leftLen;
 
         while(right < rightLen) {
             if(left == leftLen || this.grail.compare(arr[pos + left], arr[pos + right]) > 0) {
                 grailSwap(arr, pos + (dist++), pos + (right++));
+                leftWins = 0;
+
+                if(++rightWins >= minGallop && left != leftLen) {
+                    int count = grailGallop(arr, pos + right, rightLen - right, arr[pos + left], true);
+                    grailMultiSwap(arr, pos + dist, pos + right, count);
+                    dist += count;
+                    right += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    rightWins = 0;
+                }
             } 
-            else grailSwap(arr, pos + (dist++), pos + (left++));
+            else {
+                grailSwap(arr, pos + (dist++), pos + (left++));
+                rightWins = 0;
+
+                if(++leftWins >= minGallop && left != leftLen) {
+                    int count = grailGallop(arr, pos + left, leftLen - left, arr[pos + right], false);
+                    grailMultiSwap(arr, pos + dist, pos + left, count);
+                    dist += count;
+                    left += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    leftWins = 0;
+                }
+            }
         }
+        grailCountSwaps(right - leftLen + left);
+
         if(dist != left) grailMultiSwap(arr, pos + dist, pos + left, leftLen - left);
     }
-    private void grailMergeRight(SortType[] arr, int pos, int leftLen, int rightLen, int dist) {
+    private void grailMergeRight(T[] arr, int pos, int leftLen, int rightLen, int dist) {
         int mergedPos = leftLen + rightLen + dist - 1;
         int right = leftLen + rightLen - 1, left = leftLen - 1;
+        int minGallop = grailMinGallop, leftWins = 0, rightWins = 0;
 
         while(left >= 0) {
             if(right < leftLen || this.grail.compare(arr[pos + left], arr[pos + right]) > 0) {
                 grailSwap(arr, pos + (mergedPos--), pos + (left--));
+                rightWins = 0;
+
+                if(++leftWins >= minGallop && right >= leftLen) {
+                    int count = left + 1 - grailGallopBack(arr, pos, left + 1, arr[pos + right], false);
+                    for(int i = 0; i < count; i++) grailSwap(arr, pos + (mergedPos--), pos + (left--));
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    leftWins = 0;
+                }
             } 
-            else grailSwap(arr, pos + (mergedPos--), pos + (right--));
+            else {
+                grailSwap(arr, pos + (mergedPos--), pos + (right--));
+                leftWins = 0;
+
+                if(++rightWins >= minGallop && right >= leftLen) {
+                    int count = right + 1 - leftLen - grailGallopBack(arr, pos + leftLen, right + 1 - leftLen, arr[pos + left], true);
+                    for(int i = 0; i < count; i++) grailSwap(arr, pos + (mergedPos--), pos + (right--));
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    rightWins = 0;
+                }
+            }
         }
         if(right != mergedPos) {
             while(right >= leftLen) grailSwap(arr, pos + (mergedPos--), pos + (right--));
         }
+        grailCountSwaps(leftLen + rightLen + dist - 1 - mergedPos);
+    }
+
+    // The smart merges hand back two values per merged block. They are packed into
+    // one int, length in the high bits and fragment (0 or 1) in the low bit, so the
+    // block merge loops don't allocate a result object for every block.
+    private static int grailPackState(int leftOverLen, int leftOverFrag) {
+        return (leftOverLen << 1) | leftOverFrag;
     }
 
-    //returns the leftover length, then the leftover fragment
-    private GrailState grailSmartMergeWithoutBuffer(SortType[] arr, int pos, int leftOverLen, int leftOverFrag, int regBlockLen) {
-        if(regBlockLen == 0) return new GrailState(leftOverLen, leftOverFrag);
+    //returns the leftover length and the leftover fragment, packed by grailPackState
+    private int grailSmartMergeWithoutBuffer(T[] arr, int pos, int leftOverLen, int leftOverFrag, int regBlockLen,
+                                             T[] buffer, int bufferPos, int bufferLen) {
+        if(regBlockLen == 0) return grailPackState(leftOverLen, leftOverFrag);
 
         int len1 = leftOverLen, len2 = regBlockLen;
         int typeFrag = 1 - leftOverFrag; //1 if inverted
 
-        if(len1 != 0 && this.grail.compare(arr[pos + (len1 - 1)], arr[pos + len1]) - typeFrag >= 0) {
+        if(len1 != 0 && this.grail.compare(arr[pos + (len1 - 1)], arr[pos + len1]) >= typeFrag) {
             while(len1 != 0) {
                 int foundLen;
                 
-                //Binary search left, else search right
-                if (typeFrag != 0) foundLen = grailBinSearch(arr, pos + len1, len2, pos, true);
-                else foundLen = grailBinSearch(arr, pos + len1, len2, pos, false);
+                //Gallop left, else gallop right
+                if (typeFrag != 0) foundLen = grailGallop(arr, pos + len1, len2, arr[pos], true);
+                else foundLen = grailGallop(arr, pos + len1, len2, arr[pos], false);
                 
                 if(foundLen != 0) {
-                    grailRotate(arr, pos, len1, foundLen);
+                    grailRotate(arr, pos, len1, foundLen, buffer, bufferPos, bufferLen);
                     
                     pos += foundLen;
                     len2 -= foundLen;
                 }
                 
-                if(len2 == 0) return new GrailState(len1, leftOverFrag);
+                if(len2 == 0) return grailPackState(len1, leftOverFrag);
                 
                 do {
                     pos++;
                     len1--;
-                } while(len1 != 0 && this.grail.compare(arr[pos], arr[pos + len1]) - typeFrag < 0);
+                } while(len1 != 0 && this.grail.compare(arr[pos], arr[pos + len1]) < typeFrag);
             }
         }
-        return new GrailState(len2, typeFrag);
+        return grailPackState(len2, typeFrag);
     }
 
-    //returns the leftover length, then the leftover fragment
-    private GrailState grailSmartMergeWithBuffer(SortType[] arr, int pos, int leftOverLen, int leftOverFrag, int blockLen) {
+    //returns the leftover length and the leftover fragment, packed by grailPackState
+    private int grailSmartMergeWithBuffer(T[] arr, int pos, int leftOverLen, int leftOverFrag, int blockLen) {
         int dist = 0 - blockLen;
         int left = 0, right = leftOverLen;
         int leftEnd = right, rightEnd = right + blockLen;
         int typeFrag = 1 - leftOverFrag;  // 1 if inverted
+        int minGallop = grailMinGallop, leftWins = 0, rightWins = 0;
 
         while(left < leftEnd && right < rightEnd) {
-            if(this.grail.compare(arr[pos + left], arr[pos + right]) - typeFrag < 0) {
+            if(this.grail.compare(arr[pos + left], arr[pos + right]) < typeFrag) {
                 grailSwap(arr, pos + (dist++), pos + (left++));
+                rightWins = 0;
+
+                if(++leftWins >= minGallop && left < leftEnd) {
+                    int count = grailGallop(arr, pos + left, leftEnd - left, arr[pos + right], typeFrag == 0);
+                    grailMultiSwap(arr, pos + dist, pos + left, count);
+                    dist += count;
+                    left += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    leftWins = 0;
+                }
+            }
+            else {
+                grailSwap(arr, pos + (dist++), pos + (right++));
+                leftWins = 0;
+
+                if(++rightWins >= minGallop && right < rightEnd) {
+                    int count = grailGallop(arr, pos + right, rightEnd - right, arr[pos + left], typeFrag != 0);
+                    grailMultiSwap(arr, pos + dist, pos + right, count);
+                    dist += count;
+                    right += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    rightWins = 0;
+                }
             }
-            else grailSwap(arr, pos + (dist++), pos + (right++));
         }
+        grailCountSwaps(dist + blockLen);
         
         int length, fragment = leftOverFrag;
         
         if(left < leftEnd) {
             length = leftEnd - left;
+            grailCountSwaps(length);
             
             while(left < leftEnd) grailSwap(arr, pos + (--leftEnd), pos + (--rightEnd));
         } 
@@ -322,30 +688,55 @@ final public class GrailSort {
             length = rightEnd - right;
             fragment = typeFrag;
         }
-        return new GrailState(length, fragment);
+        return grailPackState(length, fragment);
     }
 
 
     /***** Sort With Extra Buffer *****/
 
-    //returns the leftover length, then the leftover fragment
-    private GrailState grailSmartMergeWithXBuf(SortType[] arr, int pos, int leftOverLen, int leftOverFrag, int blockLen) {
+    //returns the leftover length and the leftover fragment, packed by grailPackState
+    private int grailSmartMergeWithXBuf(T[] arr, int pos, int leftOverLen, int leftOverFrag, int blockLen) {
         int dist = 0 - blockLen;
         int left = 0, right = leftOverLen;
         int leftEnd = right, rightEnd = right + blockLen;
         int typeFrag = 1 - leftOverFrag;  // 1 if inverted
+        int minGallop = grailMinGallop, leftWins = 0, rightWins = 0;
 
         while(left < leftEnd && right < rightEnd) {
-            if(this.grail.compare(arr[pos + left], arr[pos + right]) - typeFrag < 0) {
+            if(this.grail.compare(arr[pos + left], arr[pos + right]) < typeFrag) {
                 arr[pos + (dist++)] = arr[pos + (left++)];
+                rightWins = 0;
+
+                if(++leftWins >= minGallop && left < leftEnd) {
+                    int count = grailGallop(arr, pos + left, leftEnd - left, arr[pos + right], typeFrag == 0);
+                    System.arraycopy(arr, pos + left, arr, pos + dist, count);
+                    dist += count;
+                    left += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    leftWins = 0;
+                }
+            }
+            else {
+                arr[pos + (dist++)] = arr[pos + (right++)];
+                leftWins = 0;
+
+                if(++rightWins >= minGallop && right < rightEnd) {
+                    int count = grailGallop(arr, pos + right, rightEnd - right, arr[pos + left], typeFrag != 0);
+                    System.arraycopy(arr, pos + right, arr, pos + dist, count);
+                    dist += count;
+                    right += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    rightWins = 0;
+                }
             }
-            else arr[pos + (dist++)] = arr[pos + (right++)];
         }
+        grailCountMoves(dist + blockLen);
         
         int length, fragment = leftOverFrag;
         
         if(left < leftEnd) {
             length = leftEnd - left;
+            grailCountMoves(length);
             
             while(left < leftEnd) arr[pos + (--rightEnd)] = arr[pos + (--leftEnd)];
         } 
@@ -353,22 +744,49 @@ final public class GrailSort {
             length = rightEnd - right;
             fragment = typeFrag;
         }
-        return new GrailState(length, fragment);
+        return grailPackState(length, fragment);
     }
 
     // arr[dist..-1] - free, arr[0, leftEnd - 1] ++ arr[leftEnd, leftEnd + rightEnd - 1]
     // -> arr[dist, dist + leftEnd + rightEnd - 1]
-    private void grailMergeLeftWithXBuf(SortType[] arr, int pos, int leftEnd, int rightEnd, int dist) {
+    private void grailMergeLeftWithXBuf(T[] arr, int pos, int leftEnd, int rightEnd, int dist) {
         int left = 0, right = leftEnd;
+        int minGallop = grailMinGallop, leftWins = 0, rightWins = 0;
         rightEnd += leftEnd;
 
         while(right < rightEnd) {
             if(left == leftEnd || this.grail.compare(arr[pos + left], arr[pos + right]) > 0) {
                 arr[pos + (dist++)] = arr[pos + (right++)];
+                leftWins = 0;
+
+                if(++rightWins >= minGallop && left != leftEnd) {
+                    int count = grailGallop(arr, pos + right, rightEnd - right, arr[pos + left], true);
+                    System.arraycopy(arr, pos + right, arr, pos + dist, count);
+                    dist += count;
+                    right += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    rightWins = 0;
+                }
+            }
+            else {
+                arr[pos + (dist++)] = arr[pos + (left++)];
+                rightWins = 0;
+
+                if(++leftWins >= minGallop && left != leftEnd) {
+                    int count = grailGallop(arr, pos + left, leftEnd - left, arr[pos + right], false);
+                    System.arraycopy(arr, pos + left, arr, pos + dist, count);
+                    dist += count;
+                    left += count;
+                    minGallop = grailNextMinGallop(minGallop, count);
+                    leftWins = 0;
+                }
             }
-            else arr[pos + (dist++)] = arr[pos + (left++)];
         }
+        grailCountMoves(right - leftEnd + left);
+
         if(dist != left) {
+            grailCountMoves(leftEnd - left);
+
             while(left < leftEnd) arr[pos + (dist++)] = arr[pos + (left++)];
         }
     }
@@ -379,7 +797,7 @@ final public class GrailSort {
     // aBlockCount are regular blocks from stream A.
     // lastLen is length of last (irregular) block from stream B, that should go before aBlockCount blocks.
     // lastLen = 0 requires aBlockCount = 0 (no irregular blocks). lastLen > 0, aBlockCount = 0 is possible.
-    private void grailMergeBuffersLeftWithXBuf(SortType[] arr, int keysPos, int midkey, int pos, int blockCount,
+    private void grailMergeBuffersLeftWithXBuf(T[] arr, int keysPos, int midkey, int pos, int blockCount,
                                                       int regBlockLen, int aBlockCount, int lastLen) {
 
         if(blockCount == 0) {
@@ -401,15 +819,16 @@ final public class GrailSort {
 
             if(nextFrag == leftOverFrag) {
                 System.arraycopy(arr, pos + restToProcess, arr, pos + restToProcess - regBlockLen, leftOverLen);
+                grailCountMoves(leftOverLen);
                 
                 restToProcess = processIndex;
                 leftOverLen = regBlockLen;
             } 
             else {
-                GrailState results = grailSmartMergeWithXBuf(arr, pos + restToProcess, leftOverLen, leftOverFrag, regBlockLen);
+                int results = grailSmartMergeWithXBuf(arr, pos + restToProcess, leftOverLen, leftOverFrag, regBlockLen);
                 
-                leftOverLen = results.getLeftOverLen();
-                leftOverFrag = results.getLeftOverFrag();
+                leftOverLen = results >>> 1;
+                leftOverFrag = results & 1;
             }
         }
         restToProcess = processIndex - leftOverLen;
@@ -417,6 +836,7 @@ final public class GrailSort {
         if(lastLen != 0) {
             if(leftOverFrag != 0) {
                 System.arraycopy(arr, pos + restToProcess, arr, pos + restToProcess - regBlockLen, leftOverLen);
+                grailCountMoves(leftOverLen);
                 
                 restToProcess = processIndex;
                 leftOverLen = regBlockLen * aBlockCount;
@@ -428,15 +848,174 @@ final public class GrailSort {
         } 
         else {
             System.arraycopy(arr, pos + restToProcess, arr, pos + restToProcess - regBlockLen, leftOverLen);
+            grailCountMoves(leftOverLen);
+        }
+    }
+
+    // arr[0, len1 - 1] ++ arr[len1, len1 + len2 - 1] are merged in place, copying the
+    // shorter run out to buffer[bufferPos..]. buffer needs min(len1, len2) items.
+    void grailMergeWithExtBuf(T[] arr, int pos, int len1, int len2, T[] buffer, int bufferPos) {
+        grailCountMoves(Math.min(len1, len2) + len1 + len2);
+
+        if(len1 <= len2) {
+            System.arraycopy(arr, pos, buffer, bufferPos, len1);
+
+            int left = bufferPos, leftEnd = bufferPos + len1;
+            int right = pos + len1, rightEnd = pos + len1 + len2;
+            int dist = pos;
+
+            int minGallop = grailMinGallop, leftWins = 0, rightWins = 0;
+
+            while(left < leftEnd && right < rightEnd) {
+                if(this.grail.compare(buffer[left], arr[right]) > 0) {
+                    arr[dist++] = arr[right++];
+                    leftWins = 0;
+
+                    if(++rightWins >= minGallop && right < rightEnd) {
+                        int count = grailGallop(arr, right, rightEnd - right, buffer[left], true);
+                        System.arraycopy(arr, right, arr, dist, count);
+                        dist += count;
+                        right += count;
+                        minGallop = grailNextMinGallop(minGallop, count);
+                        rightWins = 0;
+                    }
+                }
+                else {
+                    arr[dist++] = buffer[left++];
+                    rightWins = 0;
+
+                    if(++leftWins >= minGallop && left < leftEnd) {
+                        int count = grailGallop(buffer, left, leftEnd - left, arr[right], false);
+                        System.arraycopy(buffer, left, arr, dist, count);
+                        dist += count;
+                        left += count;
+                        minGallop = grailNextMinGallop(minGallop, count);
+                        leftWins = 0;
+                    }
+                }
+            }
+            if(left < leftEnd) System.arraycopy(buffer, left, arr, dist, leftEnd - left);
+        }
+        else {
+            System.arraycopy(arr, pos + len1, buffer, bufferPos, len2);
+
+            int left = pos + len1 - 1, right = bufferPos + len2 - 1;
+            int mergedPos = pos + len1 + len2 - 1;
+
+            int minGallop = grailMinGallop, leftWins = 0, rightWins = 0;
+
+            while(left >= pos && right >= bufferPos) {
+                if(this.grail.compare(arr[left], buffer[right]) > 0) {
+                    arr[mergedPos--] = arr[left--];
+                    rightWins = 0;
+
+                    if(++leftWins >= minGallop && left >= pos) {
+                        int count = left + 1 - pos - grailGallopBack(arr, pos, left + 1 - pos, buffer[right], false);
+                        System.arraycopy(arr, left + 1 - count, arr, mergedPos + 1 - count, count);
+                        mergedPos -= count;
+                        left -= count;
+                        minGallop = grailNextMinGallop(minGallop, count);
+                        leftWins = 0;
+                    }
+                }
+                else {
+                    arr[mergedPos--] = buffer[right--];
+                    leftWins = 0;
+
+                    if(++rightWins >= minGallop && right >= bufferPos) {
+                        int count = right + 1 - bufferPos - grailGallopBack(buffer, bufferPos, right + 1 - bufferPos, arr[left], true);
+                        System.arraycopy(buffer, right + 1 - count, arr, mergedPos + 1 - count, count);
+                        mergedPos -= count;
+                        right -= count;
+                        minGallop = grailNextMinGallop(minGallop, count);
+                        rightWins = 0;
+                    }
+                }
+            }
+            if(right >= bufferPos) System.arraycopy(buffer, bufferPos, arr, pos, right - bufferPos + 1);
         }
     }
 
     /***** End Sort With Extra Buffer *****/
 
+    /***** Sort With Large Buffer *****/
+
+    // With a buffer of twice the dynamic buffer or more, a plain bottom-up merge sort
+    // beats the block sort: no keys to gather, no blocks to select, and every merge
+    // whose shorter run fits in the buffer is a straight two-way merge. Longer merges
+    // are split around a rotation until one side fits. The static and dynamic buffer
+    // modes stay below this, so they still block sort.
+    static boolean grailMergeSortFits(int len, int bufferLen) {
+        return bufferLen > grailStaticBufferLen && bufferLen / 2 >= grailDynBufferLen(len);
+    }
+
+    private void grailMergeSort(T[] arr, int pos, int len, T[] buffer, int bufferPos, int bufferLen) {
+        for(int run = 0; run < len; run += grailMergeSortRunLen) {
+            grailInsertSort(arr, pos + run, Math.min(grailMergeSortRunLen, len - run));
+        }
+
+        for(int part = grailMergeSortRunLen; part < len; part *= 2) {
+            for(int left = 0; left + part < len; left += 2 * part) {
+                int rightLen = Math.min(part, len - (left + part));
+                grailMergeAdaptive(arr, pos + left, part, rightLen, buffer, bufferPos, bufferLen);
+            }
+        }
+    }
+
+    // arr[pos, pos + len1 - 1] ++ arr[pos + len1, pos + len1 + len2 - 1] -> merged in place
+    private void grailMergeAdaptive(T[] arr, int pos, int len1, int len2, T[] buffer, int bufferPos, int bufferLen) {
+        while(len1 != 0 && len2 != 0) {
+            // items already in place at both ends don't take part in the merge
+            int skip = grailBinSearch(arr, pos, len1, pos + len1, false);
+            pos += skip;
+            len1 -= skip;
+            if(len1 == 0) return;
+
+            len2 = grailBinSearch(arr, pos + len1, len2, pos + len1 - 1, true);
+            if(len2 == 0) return;
+
+            if(len1 <= bufferLen || len2 <= bufferLen) {
+                grailMergeWithExtBuf(arr, pos, len1, len2, buffer, bufferPos);
+                return;
+            }
+
+            int cut1, cut2;
+            if(len1 >= len2) {
+                cut1 = len1 / 2;
+                //Binary Search left
+                cut2 = grailBinSearch(arr, pos + len1, len2, pos + cut1, true);
+            }
+            else {
+                cut2 = len2 / 2;
+                //Binary Search right
+                cut1 = grailBinSearch(arr, pos, len1, pos + len1 + cut2, false);
+            }
+            grailRotate(arr, pos + cut1, len1 - cut1, cut2, buffer, bufferPos, bufferLen);
+
+            // the shorter half recurses, the longer one loops
+            int rightPos = pos + cut1 + cut2;
+            int rightLen1 = len1 - cut1, rightLen2 = len2 - cut2;
+
+            if(cut1 + cut2 <= rightLen1 + rightLen2) {
+                grailMergeAdaptive(arr, pos, cut1, cut2, buffer, bufferPos, bufferLen);
+                pos = rightPos;
+                len1 = rightLen1;
+                len2 = rightLen2;
+            }
+            else {
+                grailMergeAdaptive(arr, rightPos, rightLen1, rightLen2, buffer, bufferPos, bufferLen);
+                len1 = cut1;
+                len2 = cut2;
+            }
+        }
+    }
+
+    /***** End Sort With Large Buffer *****/
+
     // build blocks of length buildLen
     // input: [-buildLen, -1] elements are buffer
     // output: first buildLen elements are buffer, blocks 2 * buildLen and last subblock sorted
-    private void grailBuildBlocks(SortType[] arr, int pos, int len, int buildLen, SortType[] extbuf, int bufferPos, int extBufLen) {
+    private void grailBuildBlocks(T[] arr, int pos, int len, int buildLen, T[] extbuf, int bufferPos, int extBufLen) {
         int buildBuf = buildLen < extBufLen ? buildLen : extBufLen;
         
         while((buildBuf & (buildBuf - 1)) != 0) {
@@ -445,7 +1024,8 @@ final public class GrailSort {
 
         int extraDist, part;
         
-        if(buildBuf != 0) {
+        // the pairwise pass below shifts items by two, so a 1-item buffer is no use
+        if(buildBuf >= 2) {
             System.arraycopy(arr, pos - buildBuf, extbuf, bufferPos, buildBuf);
             
             for(int dist = 1; dist < len; dist += 2) {
@@ -456,6 +1036,7 @@ final public class GrailSort {
                 arr[pos + dist - 2] = arr[pos + dist - extraDist];
             }
             if(len % 2 != 0) arr[pos + len - 3] = arr[pos + len - 1];
+            grailCountMoves(buildBuf + len);
             
             pos -= 2;
 
@@ -471,11 +1052,14 @@ final public class GrailSort {
 
                 if(rest > part) grailMergeLeftWithXBuf(arr, pos + left, part, rest - part, 0 - part);
                 else {
+                    grailCountMoves(len - left);
+
                     while(left < len) arr[pos + left - part] = arr[pos + left++];
                 }
                 pos -= part;
             }
             System.arraycopy(extbuf, bufferPos, arr, pos + len, buildBuf);
+            grailCountMoves(buildBuf);
         } 
         else {
             for(int dist = 1; dist < len; dist += 2) {
@@ -487,6 +1071,7 @@ final public class GrailSort {
             }
             
             if(len % 2 != 0) grailSwap(arr, pos + (len - 1), pos + (len - 3));
+            grailCountSwaps(len);
             
             pos -= 2;
             part = 2;
@@ -505,7 +1090,7 @@ final public class GrailSort {
             if(rest > part) {
                 grailMergeLeft(arr, pos + left, part, rest - part, 0 - part);
             } 
-            else grailRotate(arr, pos + left - part, part, rest);
+            else grailRotate(arr, pos + left - part, part, rest, extbuf, bufferPos, extBufLen);
             
             pos -= part;
             part *= 2;
@@ -514,7 +1099,7 @@ final public class GrailSort {
         int restToBuild = len % (2 * buildLen);
         int leftOverPos = len - restToBuild;
 
-        if(restToBuild <= buildLen) grailRotate(arr, pos + leftOverPos, restToBuild, buildLen);
+        if(restToBuild <= buildLen) grailRotate(arr, pos + leftOverPos, restToBuild, buildLen, extbuf, bufferPos, extBufLen);
         else grailMergeRight(arr, pos + leftOverPos, buildLen, restToBuild - buildLen, buildLen);
 
         while(leftOverPos > 0) {
@@ -523,10 +1108,60 @@ final public class GrailSort {
         }
     }
 
+    // Sorts the blocks by their first items, swapping keys along with them.
+    // Ties go to the block with the smaller key, i.e. the one that came first.
+    // Returns where midkey ended up.
+    //
+    // A blocks [0, midkey) and B blocks [midkey, blockCount) are each in order already,
+    // so this is a merge of the two: the next block is the first B block left or the
+    // smallest A block left. The A blocks left stay together, just ahead of the B blocks
+    // left. Placing a B block swaps it with the first of them, which keeps track of the
+    // smallest; placing an A block swaps it with the first of them and then scans their
+    // keys for the next smallest. That is blockCount head comparisons and at most
+    // (blockCount / 2)^2 / 2 key comparisons, where a selection sort needs
+    // blockCount^2 / 2 head comparisons: a smaller constant, not a better bound. The
+    // scan is still quadratic in blockCount, which keeps it within O(merged length)
+    // only because blocks are about sqrt(len) items long. A heap over the A keys
+    // would take O(blockCount log blockCount), but it needs room the sort doesn't have.
+    private int grailSelectBlocks(T[] arr, int keyPos, int blockPos, int blockCount, int regBlockLen, int midkey) {
+        int next = 0, aEnd = midkey, minA = 0;
+        int midkeyPos = midkey;
+
+        while(next < aEnd) {
+            // B goes first only if it's strictly smaller, A keys are smaller than B keys
+            if(aEnd < blockCount && this.grail.compare(arr[blockPos + aEnd * regBlockLen], arr[blockPos + minA * regBlockLen]) < 0) {
+                if(aEnd == midkey) midkeyPos = next;
+
+                grailMultiSwap(arr, blockPos + next * regBlockLen, blockPos + aEnd * regBlockLen, regBlockLen);
+                grailSwap(arr, keyPos + next, keyPos + aEnd);
+                grailCountSwaps(1);
+
+                if(minA == next) minA = aEnd;
+                aEnd++;
+            }
+            else {
+                if(minA != next) {
+                    grailMultiSwap(arr, blockPos + next * regBlockLen, blockPos + minA * regBlockLen, regBlockLen);
+                    grailSwap(arr, keyPos + next, keyPos + minA);
+                    grailCountSwaps(1);
+                }
+                minA = next + 1;
+                for(int index = next + 2; index < aEnd; index++) {
+                    if(this.grail.compare(arr[keyPos + index], arr[keyPos + minA]) < 0) minA = index;
+                }
+            }
+            next++;
+        }
+        return midkeyPos;
+    }
+
     // keys are on the left of arr. Blocks of length buildLen combined. We'll combine them into pairs
     // buildLen and keys are powers of 2. (2 * buildLen / regBlockLen) keys are guaranteed
-    private void grailCombineBlocks(SortType[] arr, int keyPos, int pos, int len, int buildLen, int regBlockLen,
-                                           boolean havebuf, SortType[] buffer, int bufferPos) {
+    // buffer - merges with it if havebuf and it holds a block, else only rotates with it
+    private void grailCombineBlocks(T[] arr, int keyPos, int pos, int len, int buildLen, int regBlockLen,
+                                           boolean havebuf, T[] buffer, int bufferPos, int bufferLen) {
+
+        boolean xbuf = havebuf && regBlockLen <= bufferLen;
 
         int combineLen = len / (2 * buildLen);
         int leftOver = len % (2 * buildLen);
@@ -536,7 +1171,10 @@ final public class GrailSort {
             leftOver = 0;
         }
 
-        if(buffer != null) System.arraycopy(arr, pos - regBlockLen, buffer, bufferPos, regBlockLen);
+        if(xbuf) {
+            System.arraycopy(arr, pos - regBlockLen, buffer, bufferPos, regBlockLen);
+            grailCountMoves(regBlockLen);
+        }
 
         for(int i = 0; i <= combineLen; i++) {
             if(i == combineLen && leftOver == 0) break;
@@ -546,28 +1184,7 @@ final public class GrailSort {
 
             grailInsertSort(arr, keyPos, blockCount + (i == combineLen ? 1 : 0));
 
-            int midkey = buildLen / regBlockLen;
-
-            for(int index = 1; index < blockCount; index++) {
-                int leftIndex = index - 1;
-
-                for(int rightIndex = index; rightIndex < blockCount; rightIndex++) {
-                    int rightComp = this.grail.compare(arr[blockPos + leftIndex * regBlockLen], arr[blockPos + rightIndex * regBlockLen]);
-                    
-                    if(rightComp > 0 || (rightComp == 0 && this.grail.compare(arr[keyPos + leftIndex], arr[keyPos + rightIndex]) > 0)) {
-                        leftIndex = rightIndex;
-                    }
-                }
-                
-                if(leftIndex != index - 1) {
-                    grailMultiSwap(arr, blockPos + (index - 1) * regBlockLen, blockPos + leftIndex * regBlockLen, regBlockLen);
-                    grailSwap(arr, keyPos + (index - 1), keyPos + leftIndex);
-                    
-                    if(midkey == index - 1 || midkey == leftIndex) {
-                        midkey ^= (index - 1) ^ leftIndex;
-                    }
-                }
-            }
+            int midkey = grailSelectBlocks(arr, keyPos, blockPos, blockCount, regBlockLen, buildLen / regBlockLen);
 
             int aBlockCount, lastLen;
             aBlockCount = lastLen = 0;
@@ -581,60 +1198,179 @@ final public class GrailSort {
                 }
             }
 
-            if(buffer != null) {
+            if(xbuf) {
                 grailMergeBuffersLeftWithXBuf(arr, keyPos, keyPos + midkey, blockPos, blockCount - aBlockCount, 
                                               regBlockLen, aBlockCount, lastLen);
             }
             else grailMergeBuffersLeft(arr, keyPos, keyPos + midkey, blockPos, blockCount - aBlockCount,
-                                       regBlockLen, havebuf, aBlockCount, lastLen);
+                                       regBlockLen, havebuf, aBlockCount, lastLen, buffer, bufferPos, bufferLen);
         }
-        if(buffer != null) {
+        if(xbuf) {
             for(int i = len - 1; i >= 0; i--) arr[pos + i] = arr[pos + i - regBlockLen];
             
             System.arraycopy(buffer, bufferPos, arr, pos - regBlockLen, regBlockLen);
+            grailCountMoves(len + regBlockLen);
         }
         else if(havebuf) {
+            grailCountSwaps(len);
+
             while(--len >= 0) grailSwap(arr, pos + len, pos + len - regBlockLen);
         }
     }
 
-    private void grailLazyStableSort(SortType[] arr, int pos, int len) {
-        for(int dist = 1; dist < len; dist += 2) {
-            if(this.grail.compare(arr[pos + dist - 1], arr[pos + dist]) > 0) {
-                grailSwap(arr, pos + (dist - 1), pos + dist);
-            }
+    /***** Few Keys Sort *****/
+
+    // Taken when grailGetKeys scanned the whole array and found fewer than 4 distinct
+    // items. Every other item then equals one of the keys, so the sort is a stable
+    // partition into the items less than, equal to and greater than the middle key:
+    // one comparison per item, and O(len * log(len / bufferLen)) moves.
+    // arr[pos, pos + keysFound - 1] - the distinct keys, sorted, each the first of its class
+    private void grailFewKeysSort(T[] arr, int pos, int len, int keysFound, T[] buffer, int bufferPos, int bufferLen) {
+        if(keysFound > 1) {
+            grailPartitionByKey(arr, pos + keysFound, len - keysFound, arr[pos + 1], buffer, bufferPos, bufferLen);
         }
 
-        for(int part = 2; part < len; part *= 2) {
-            int left = 0, right = len - 2 * part;
+        // each key is the first of its class, so it goes in ahead of the equal items
+        grailMergeWithoutBuffer(arr, pos, keysFound, len - keysFound, buffer, bufferPos, bufferLen);
+    }
 
-            while(left <= right) {
-                grailMergeWithoutBuffer(arr, pos + left, part, part);
-                left += 2 * part;
+    // The partition hands back the lengths of its first two classes, packed into one
+    // long; the third is whatever is left of the range.
+    private static long grailPackCounts(int lessLen, int equalLen) {
+        return ((long) lessLen << 32) | equalLen;
+    }
+
+    // Stable partition of arr[pos, pos + len - 1] around key. Halves are partitioned
+    // on their own, then L1 E1 G1 L2 E2 G2 -> L1 L2 E1 E2 G1 G2 with two rotations.
+    // returns the lengths of the less and equal classes, packed by grailPackCounts
+    // buffer - partitions ranges that fit in it, and rotates with it
+    private long grailPartitionByKey(T[] arr, int pos, int len, T key, T[] buffer, int bufferPos, int bufferLen) {
+        if(len <= bufferLen) return grailPartitionWithBuffer(arr, pos, len, key, buffer, bufferPos, bufferLen);
+        if(len <= grailPartitionRunLen) return grailPartitionInPlace(arr, pos, len, key);
+
+        int leftLen = len / 2, rightLen = len - leftLen;
+
+        long left = grailPartitionByKey(arr, pos, leftLen, key, buffer, bufferPos, bufferLen);
+        long right = grailPartitionByKey(arr, pos + leftLen, rightLen, key, buffer, bufferPos, bufferLen);
+
+        int less1 = (int) (left >>> 32), equal1 = (int) left, greater1 = leftLen - less1 - equal1;
+        int less2 = (int) (right >>> 32), equal2 = (int) right;
+
+        grailRotate(arr, pos + less1, equal1 + greater1, less2, buffer, bufferPos, bufferLen);
+        grailRotate(arr, pos + less1 + less2 + equal1, greater1, equal2, buffer, bufferPos, bufferLen);
+
+        return grailPackCounts(less1 + less2, equal1 + equal2);
+    }
+
+    // less items are packed in place, equal items fill the buffer from the front and
+    // greater items from the back, then both are copied back in order
+    private long grailPartitionWithBuffer(T[] arr, int pos, int len, T key, T[] buffer, int bufferPos, int bufferLen) {
+        int lessLen = 0, equalLen = 0, greaterLen = 0;
+        int last = bufferPos + bufferLen - 1;
+
+        for(int i = pos; i < pos + len; i++) {
+            T item = arr[i];
+            int cmp = this.grail.compare(item, key);
+
+            if(cmp < 0) arr[pos + lessLen++] = item;
+            else if(cmp == 0) buffer[bufferPos + equalLen++] = item;
+            else buffer[last - greaterLen++] = item;
+        }
+
+        System.arraycopy(buffer, bufferPos, arr, pos + lessLen, equalLen);
+        for(int i = 0, dest = pos + lessLen + equalLen; i < greaterLen; i++) arr[dest + i] = buffer[last - i];
+        grailCountMoves(2 * len);
+
+        return grailPackCounts(lessLen, equalLen);
+    }
+
+    // short ranges without a buffer: each less or equal item moves back to the end of its class
+    private long grailPartitionInPlace(T[] arr, int pos, int len, T key) {
+        int lessLen = 0, equalLen = 0;
+
+        for(int i = 0; i < len; i++) {
+            int cmp = this.grail.compare(arr[pos + i], key);
+
+            if(cmp < 0) {
+                grailRotate(arr, pos + lessLen, i - lessLen, 1);
+                lessLen++;
+            }
+            else if(cmp == 0) {
+                grailRotate(arr, pos + lessLen + equalLen, i - lessLen - equalLen, 1);
+                equalLen++;
             }
+        }
+        return grailPackCounts(lessLen, equalLen);
+    }
 
-            int rest = len - left;
-            
-            if(rest > part) grailMergeWithoutBuffer(arr, pos + left, part, rest - part);
+    /***** End Few Keys Sort *****/
+
+    void grailCommonSort(T[] arr, int pos, int len, T[] buffer, int bufferPos, int bufferLen) {
+        if(this.metrics == null) {
+            grailBlockSort(arr, pos, len, buffer, bufferPos, bufferLen);
+            return;
+        }
+
+        this.metrics.grailSortStart(len);
+        try {
+            grailBlockSort(arr, pos, len, buffer, bufferPos, bufferLen);
+        }
+        finally {
+            this.metrics.grailSortEnd();
         }
     }
 
-    private void grailCommonSort(SortType[] arr, int pos, int len, SortType[] buffer, int bufferPos, int bufferLen) {
+    private void grailBlockSort(T[] arr, int pos, int len, T[] buffer, int bufferPos, int bufferLen) {
         if(len <= 32) {
+            long start = grailPhaseStart();
+            grailPath(GrailSortMetrics.Path.INSERTION);
             grailInsertSort(arr, pos, len);
+            grailPhaseEnd(GrailSortMetrics.Phase.INSERT_SORT, start);
+            return;
+        }
+
+        if(grailMergeSortFits(len, bufferLen)) {
+            long start = grailPhaseStart();
+            grailPath(GrailSortMetrics.Path.MERGE_SORT);
+            grailMergeSort(arr, pos, len, buffer, bufferPos, bufferLen);
+            grailPhaseEnd(GrailSortMetrics.Phase.MERGE_SORT, start);
             return;
         }
         
-        int blockLen = (int) Math.sqrt(len);  
+        int blockLen = 1;
+        while((long) blockLen * blockLen < len) blockLen *= 2;
         int numKeys = ((len - 1) / blockLen) + 1;
         int keyLength = numKeys + blockLen;
-        int keysFound = grailGetKeys(arr, pos, len, keyLength);
-        
+
+        int keysFound = grailGatherKeys(arr, pos, len, keyLength, buffer, bufferPos, bufferLen);
+        grailSortWithKeys(arr, pos, len, keysFound, buffer, bufferPos, bufferLen);
+    }
+
+    // grailGetKeys, timed
+    private int grailGatherKeys(T[] arr, int pos, int len, int numKeys, T[] buffer, int bufferPos, int bufferLen) {
+        long start = grailPhaseStart();
+        int keysFound = grailGetKeys(arr, pos, len, numKeys, buffer, bufferPos, bufferLen);
+
+        if(this.metrics != null) this.metrics.grailKeysFound(keysFound);
+        grailPhaseEnd(GrailSortMetrics.Phase.GET_KEYS, start);
+        return keysFound;
+    }
+
+    // arr[pos, pos + keysFound - 1] - distinct keys, as gathered by grailGetKeys
+    private void grailSortWithKeys(T[] arr, int pos, int len, int keysFound, T[] buffer, int bufferPos, int bufferLen) {
+        int blockLen = 1;
+        while((long) blockLen * blockLen < len) blockLen *= 2;
+        int numKeys = ((len - 1) / blockLen) + 1;
+        int keyLength = numKeys + blockLen;
+
         boolean bufferEnabled = true;
 
         if(keysFound < keyLength) {
             if(keysFound < 4) {
-                grailLazyStableSort(arr, pos, len);
+                long start = grailPhaseStart();
+                grailPath(GrailSortMetrics.Path.FEW_KEYS);
+                grailFewKeysSort(arr, pos, len, keysFound, buffer, bufferPos, bufferLen);
+                grailPhaseEnd(GrailSortMetrics.Phase.FEW_KEYS_SORT, start);
                 return;
             }
             
@@ -644,16 +1380,19 @@ final public class GrailSort {
             bufferEnabled = false;
             blockLen = 0;
         }
+        grailPath(bufferEnabled ? GrailSortMetrics.Path.BUFFERED : GrailSortMetrics.Path.KEYS_ONLY);
 
         int dist = blockLen + numKeys;
         int buildLen = bufferEnabled ? blockLen : numKeys;
 
+        long start = grailPhaseStart();
         if(bufferEnabled) {
             grailBuildBlocks(arr, pos + dist, len - dist, buildLen, buffer, bufferPos, bufferLen);
         }
         else {
             grailBuildBlocks(arr, pos + dist, len - dist, buildLen, null, bufferPos, 0);
         }
+        grailPhaseEnd(GrailSortMetrics.Phase.BUILD_BLOCKS, start);
 
         // 2 * buildLen are built
         while(len - dist > (buildLen *= 2)) {
@@ -667,7 +1406,7 @@ final public class GrailSort {
                 } 
                 else {
                     int calcKeys = 1;
-                    int i = buildLen * keysFound / 2;
+                    long i = (long) buildLen * keysFound / 2;
                     
                     while(calcKeys < numKeys && i != 0) {
                         calcKeys *= 2;
@@ -676,46 +1415,763 @@ final public class GrailSort {
                     regBlockLen = (2 * buildLen) / calcKeys;
                 }
             }
+            start = grailPhaseStart();
             grailCombineBlocks(arr, pos, pos + dist, len - dist, buildLen, regBlockLen, buildBufEnabled,
-                               buildBufEnabled && regBlockLen <= bufferLen ? buffer : null, bufferPos);
+                               buffer, bufferPos, bufferLen);
+            if(this.metrics != null) this.metrics.combineRounds++;
+            grailPhaseEnd(GrailSortMetrics.Phase.COMBINE_BLOCKS, start);
         }
 
+        start = grailPhaseStart();
         grailInsertSort(arr, pos, dist);
-        grailMergeWithoutBuffer(arr, pos, dist, len - dist);
+        grailMergeWithoutBuffer(arr, pos, dist, len - dist, buffer, bufferPos, bufferLen);
+        grailPhaseEnd(GrailSortMetrics.Phase.FINAL_MERGE, start);
     }
 
-    public void grailSortWithoutBuffer(SortType[] arr) {
-        this.grail = new SortComparator();
-        grailCommonSort(arr, 0, arr.length, null, 0, 0);
+    /***** Adaptive Sort *****/
+
+    private void grailReverse(T[] arr, int pos, int len) {
+        grailCountSwaps(len / 2);
+        for(int i = pos, j = pos + len - 1; i < j; i++, j--) grailSwap(arr, i, j);
     }
-    public void grailSortWithoutBuffer(SortType[] arr, SortComparator cmp) {
-        this.grail = cmp;
-        grailCommonSort(arr, 0, arr.length, null, 0, 0);
+
+    // returns the end of the ascending run starting at arr[pos]
+    private int grailRunEnd(T[] arr, int pos, int end) {
+        while(++pos < end && this.grail.compare(arr[pos - 1], arr[pos]) <= 0);
+        return pos;
     }
 
-    public void grailSortWithBuffer(SortType[] arr) {
-        this.grail = new SortComparator();
-        SortType[] ExtBuf = new SortType[this.grailStaticBufferLen];
-        grailCommonSort(arr, 0, arr.length, ExtBuf, 0, this.grailStaticBufferLen);
+    private int grailCountRuns(T[] arr, int pos, int len) {
+        int runs = 1;
+
+        for(int i = pos + 1; i < pos + len; i++) {
+            if(this.grail.compare(arr[i - 1], arr[i]) > 0) runs++;
+        }
+        return runs;
     }
-    public void grailSortWithBuffer(SortType[] arr, SortComparator cmp) {
-        this.grail = cmp;
-        SortType[] ExtBuf = new SortType[this.grailStaticBufferLen];
-        grailCommonSort(arr, 0, arr.length, ExtBuf, 0, this.grailStaticBufferLen);
+
+    // Strictly descending runs are reversed in place. No two items in such a run
+    // are equal, so reversing them can't break stability.
+    private void grailReverseRuns(T[] arr, int pos, int len) {
+        int end = pos + len;
+
+        for(int i = pos + 1; i < end; i++) {
+            if(this.grail.compare(arr[i - 1], arr[i]) > 0) {
+                int start = i - 1;
+
+                while(i + 1 < end && this.grail.compare(arr[i], arr[i + 1]) > 0) i++;
+
+                grailReverse(arr, start, i - start + 1);
+            }
+        }
     }
 
-    public void grailSortWithDynBuffer(SortType[] arr) {
-        this.grail = new SortComparator();
-        int tempLen = 1;
-        while(tempLen * tempLen < arr.length) tempLen *= 2;
-        SortType[] ExtBuf = new SortType[tempLen];
-        grailCommonSort(arr, 0, arr.length, ExtBuf, 0, tempLen);
+    // arr[pos, pos + leftLen - 1] - buffer, arr[pos + leftLen, pos + leftLen + rightLen - 1] - right run,
+    // left run is parked in arr[leftPos, leftPos + leftLen - 1], somewhere after the right run
+    // -> arr[pos, pos + leftLen + rightLen - 1] merged, buffer ends up where the left run was parked
+    private void grailMergeParked(T[] arr, int pos, int leftPos, int leftLen, int rightLen) {
+        int left = leftPos, leftEnd = leftPos + leftLen;
+        int right = pos + leftLen, rightEnd = right + rightLen;
+        int dist = pos;
+
+        while(left < leftEnd && right < rightEnd) {
+            if(this.grail.compare(arr[left], arr[right]) > 0) {
+                grailSwap(arr, dist++, right++);
+            }
+            else grailSwap(arr, dist++, left++);
+        }
+        while(left < leftEnd) grailSwap(arr, dist++, left++);
+
+        grailCountSwaps(dist - pos);
+    }
+
+    // arr[pos - blockLen, pos - 1] - buffer, arr[pos, pos + aLen - 1] - run A in whole blocks,
+    // arr[pos + aLen, pos + aLen + bLen - 1] - run B, longer than one block
+    // -> arr[pos - blockLen, pos + aLen + bLen - blockLen - 1] merged, buffer moved behind it
+    private void grailMergeRunBlocks(T[] arr, int keyPos, int pos, int aLen, int bLen, int blockLen) {
+        int blockCount = (aLen + bLen) / blockLen;
+        int lastLen = bLen % blockLen;
+
+        grailInsertSort(arr, keyPos, blockCount);
+
+        int midkey = grailSelectBlocks(arr, keyPos, pos, blockCount, blockLen, aLen / blockLen);
+
+        int aBlockCount = 0;
+        if(lastLen != 0) {
+            while(aBlockCount < blockCount && this.grail.compare(arr[pos + blockCount * blockLen],
+                  arr[pos + (blockCount - aBlockCount - 1) * blockLen]) < 0) {
+
+                aBlockCount++;
+            }
+        }
+        grailMergeBuffersLeft(arr, keyPos, keyPos + midkey, pos, blockCount - aBlockCount, blockLen, true, aBlockCount, lastLen,
+                              null, 0, 0);
+    }
+
+    // arr[pos - blockLen, pos - 1] - buffer, arr[pos, pos + len1 - 1] ++ arr[pos + len1, pos + len1 + len2 - 1] - runs
+    // -> arr[pos - blockLen, pos + len1 + len2 - blockLen - 1] merged, buffer moved behind it
+    private void grailMergeRuns(T[] arr, int keyPos, int pos, int len1, int len2, int blockLen) {
+        if(len2 <= blockLen) {
+            grailMergeLeft(arr, pos, len1, len2, 0 - blockLen);
+            return;
+        }
+
+        // A is block merged from its last whole block on; the shorter head
+        // steps in front of the buffer and is merged last
+        int headLen = len1 % blockLen;
+        int headPos = pos - blockLen;
+        grailRotate(arr, headPos, blockLen, headLen);
+
+        pos += headLen;
+        len1 -= headLen;
+
+        if(len1 != 0) grailMergeRunBlocks(arr, keyPos, pos, len1, len2, blockLen);
+        else grailMultiSwap(arr, pos - blockLen, pos, len2);
+
+        if(headLen != 0) {
+            int parkPos = headPos + headLen + len1 + len2;
+
+            grailMultiSwap(arr, headPos, parkPos, headLen);
+            grailMergeParked(arr, headPos, parkPos, headLen, len1 + len2);
+        }
+    }
+
+    // Natural merge sort on top of GrailSort's keys and internal buffer: ascending
+    // runs are merged pairwise, pass after pass, with the buffer travelling right
+    // through each pass. cost: O(len * log(runs)), or 2 * len if already sorted
+    private void grailAdaptiveSort(T[] arr, int pos, int len) {
+        if(this.metrics == null) {
+            grailNaturalSort(arr, pos, len);
+            return;
+        }
+
+        this.metrics.grailSortStart(len);
+        try {
+            grailNaturalSort(arr, pos, len);
+        }
+        finally {
+            this.metrics.grailSortEnd();
+        }
+    }
+
+    private void grailNaturalSort(T[] arr, int pos, int len) {
+        if(len <= 32) {
+            long start = grailPhaseStart();
+            grailPath(GrailSortMetrics.Path.INSERTION);
+            grailInsertSort(arr, pos, len);
+            grailPhaseEnd(GrailSortMetrics.Phase.INSERT_SORT, start);
+            return;
+        }
+
+        long start = grailPhaseStart();
+        grailReverseRuns(arr, pos, len);
+
+        int runs = grailCountRuns(arr, pos, len);
+        grailPhaseEnd(GrailSortMetrics.Phase.RUN_SCAN, start);
+
+        grailMergeNaturalRuns(arr, pos, len, runs);
+    }
+
+    // arr[pos, pos + len - 1] - at most runs ascending runs -> sorted
+    private void grailMergeNaturalRuns(T[] arr, int pos, int len, int runs) {
+        if(runs == 1) {
+            grailPath(GrailSortMetrics.Path.PRESORTED);
+            return;
+        }
+
+        // with more than sqrt(len) runs, log(runs) is close to log(len)
+        // and the regular block sort does better
+        if((long) runs * runs > len) {
+            grailBlockSort(arr, pos, len, null, 0, 0);
+            return;
+        }
+
+        int blockLen = 1;
+        while((long) blockLen * blockLen < len) blockLen *= 2;
+        int numKeys = ((len - 1) / blockLen) + 1;
+        int keyLength = numKeys + blockLen;
+
+        // Gathering keys and buffer keeps the other items in order, so runs stay runs
+        int keysFound = grailGatherKeys(arr, pos, len, keyLength, null, 0, 0);
+
+        if(keysFound < keyLength) {
+            // too few distinct items for a buffer
+            grailSortWithKeys(arr, pos, len, keysFound, null, 0, 0);
+            return;
+        }
+
+        grailPath(GrailSortMetrics.Path.NATURAL_MERGE);
+
+        int dist = pos + keyLength, end = pos + len;
+
+        long start = grailPhaseStart();
+        while(grailRunEnd(arr, dist, end) != end) {
+            int left = dist;
+
+            while(left < end) {
+                int mid = grailRunEnd(arr, left, end);
+
+                if(mid == end) {
+                    grailMultiSwap(arr, left - blockLen, left, end - left);
+                    break;
+                }
+
+                int right = grailRunEnd(arr, mid, end);
+                grailMergeRuns(arr, pos, left, mid - left, right - mid, blockLen);
+                left = right;
+            }
+            grailRotate(arr, dist - blockLen, end - dist, blockLen);
+        }
+        grailPhaseEnd(GrailSortMetrics.Phase.RUN_MERGE, start);
+
+        start = grailPhaseStart();
+        grailInsertSort(arr, pos, keyLength);
+        grailMergeWithoutBuffer(arr, pos, keyLength, len - keyLength, null, 0, 0);
+        grailPhaseEnd(GrailSortMetrics.Phase.FINAL_MERGE, start);
+    }
+
+    /***** End Adaptive Sort *****/
+
+    /***** Run Merging *****/
+
+    // Runs that meet in order at a boundary merge for free, so only the boundaries where
+    // a run's first item is smaller than the previous run's last one are counted.
+    private int grailCountBoundRuns(T[] arr, int[] bounds) {
+        int runs = 1;
+
+        for(int i = 1; i + 1 < bounds.length; i++) {
+            int start = bounds[i];
+            if(start != bounds[0] && start != bounds[bounds.length - 1] &&
+               this.grail.compare(arr[start - 1], arr[start]) > 0) runs++;
+        }
+        return runs;
+    }
+
+    // Without a buffer the runs are merged like grailSortAdaptive's natural runs, only
+    // the runs are counted at the boundaries instead of by a scan: keys and an internal
+    // buffer are gathered from the items, and runs longer than a block are block merged.
+    private void grailMergeBoundRuns(T[] arr, int[] bounds) {
+        int pos = bounds[0], len = bounds[bounds.length - 1] - pos;
+
+        if(len <= 32) {
+            long start = grailPhaseStart();
+            grailPath(GrailSortMetrics.Path.INSERTION);
+            grailInsertSort(arr, pos, len);
+            grailPhaseEnd(GrailSortMetrics.Phase.INSERT_SORT, start);
+            return;
+        }
+
+        long start = grailPhaseStart();
+        int runs = grailCountBoundRuns(arr, bounds);
+        grailPhaseEnd(GrailSortMetrics.Phase.RUN_SCAN, start);
+
+        grailMergeNaturalRuns(arr, pos, len, runs);
+    }
+
+    // With a buffer the runs are merged pairwise, pass after pass, straight through the
+    // buffer wherever the shorter run fits in it, and split around rotations where not.
+    private void grailMergeBoundRuns(T[] arr, int[] bounds, T[] buffer, int bufferLen) {
+        int runs = bounds.length - 1;
+
+        long start = grailPhaseStart();
+        grailPath(GrailSortMetrics.Path.NATURAL_MERGE);
+        for(int width = 1; width < runs; width *= 2) {
+            for(int left = 0; left + width < runs; left += 2 * width) {
+                int mid = bounds[left + width], right = bounds[Math.min(left + 2 * width, runs)];
+                grailMergeAdaptive(arr, bounds[left], mid - bounds[left], right - mid, buffer, 0, bufferLen);
+            }
+        }
+        grailPhaseEnd(GrailSortMetrics.Phase.RUN_MERGE, start);
+    }
+
+    private void grailMergeRunsInPlace(T[] arr, int[] bounds, T[] buffer, int bufferLen) {
+        if(buffer == null) grailMergeBoundRuns(arr, bounds);
+        else grailMergeBoundRuns(arr, bounds, buffer, bufferLen);
+    }
+
+    private void grailMergeAllRuns(T[] arr, int[] bounds, T[] buffer, int bufferLen) {
+        if(bounds.length <= 2) return;
+
+        if(this.metrics == null) {
+            grailMergeRunsInPlace(arr, bounds, buffer, bufferLen);
+            return;
+        }
+
+        this.metrics.grailSortStart(bounds[bounds.length - 1] - bounds[0]);
+        try {
+            grailMergeRunsInPlace(arr, bounds, buffer, bufferLen);
+        }
+        finally {
+            this.metrics.grailSortEnd();
+        }
+    }
+
+    /***** End Run Merging *****/
+
+    /***** Auto Sort *****/
+
+    // Counts the ascending and the strictly descending runs, but stops after limit + 1
+    // of them, so input far from sorted costs O(limit) comparisons
+    private int grailCountRunsUpTo(T[] arr, int pos, int len, int limit) {
+        int runs = 0, end = pos + len;
+
+        for(int i = pos; i < end && runs <= limit; runs++) {
+            if(i + 1 < end && this.grail.compare(arr[i], arr[i + 1]) > 0) {
+                i++;
+                while(i + 1 < end && this.grail.compare(arr[i], arr[i + 1]) > 0) i++;
+                i++;
+            }
+            else i = grailRunEnd(arr, i, end);
+        }
+        return runs;
+    }
+
+    // Estimates the distinct items from a sorted sample of evenly spaced items. If D
+    // values were equally common, a sample of s items would show D (1 - (1 - 1/D)^s)
+    // of them on average, which grows with D; the estimate solves that for the count seen.
+    @SuppressWarnings("unchecked")
+    private int grailEstimateDistinct(T[] arr, int pos, int len) {
+        int sampleLen = Math.min(grailAutoSampleMax, grailDynBufferLen(len));
+        int distinct = 1;
+
+        T[] sample = (T[]) GrailBufferPool.objects.acquire(sampleLen);
+        try {
+            for(int i = 0; i < sampleLen; i++) sample[i] = arr[pos + (int) ((long) i * len / sampleLen)];
+            grailInsertSort(sample, 0, sampleLen);
+
+            for(int i = 1; i < sampleLen; i++) {
+                if(this.grail.compare(sample[i - 1], sample[i]) != 0) distinct++;
+            }
+        }
+        finally {
+            Arrays.fill(sample, 0, sampleLen, null);
+            GrailBufferPool.objects.release(sample);
+        }
+
+        if(distinct == sampleLen) return len;
+
+        int low = distinct, high = len;
+        while(low < high) {
+            int mid = low + (high - low) / 2;
+            if(mid * (1 - Math.pow(1 - 1.0 / mid, sampleLen)) < distinct - 0.5) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private GrailSortPlan grailPlan(T[] arr, int pos, int len, int maxBufferLen) {
+        if(len <= 32) return new GrailSortPlan(len, GrailSortMetrics.Path.INSERTION, 0, -1, -1);
+
+        int bufferLen = Math.min(maxBufferLen, grailMaxBufferLen(len));
+
+        // the same bound as grailMergeNaturalRuns: more runs, and the block sort does better
+        int runLimit = (int) Math.sqrt(len);
+        int runs = grailCountRunsUpTo(arr, pos, len, runLimit);
+
+        if(runs == 1) return new GrailSortPlan(len, GrailSortMetrics.Path.PRESORTED, 0, runs, -1);
+        if(runs <= runLimit) {
+            // a small buffer would split the long merges around many rotations
+            int runBufferLen = bufferLen >= grailAutoMergeSortMin ? bufferLen : 0;
+            return new GrailSortPlan(len, GrailSortMetrics.Path.NATURAL_MERGE, runBufferLen, runs, -1);
+        }
+
+        int distinct = grailEstimateDistinct(arr, pos, len);
+
+        int blockLen = grailDynBufferLen(len);
+        int keyLength = ((len - 1) / blockLen) + 1 + blockLen;
+
+        if(bufferLen >= grailAutoMergeSortMin || (distinct < keyLength && bufferLen >= grailAutoFewKeysMergeSortMin)) {
+            return new GrailSortPlan(len, GrailSortMetrics.Path.MERGE_SORT, bufferLen, runs, distinct);
+        }
+
+        GrailSortMetrics.Path path = distinct >= keyLength ? GrailSortMetrics.Path.BUFFERED
+                                   : distinct >= 4 ? GrailSortMetrics.Path.KEYS_ONLY : GrailSortMetrics.Path.FEW_KEYS;
+        return new GrailSortPlan(len, path, bufferLen, runs, distinct);
+    }
+
+    // boundaries of the ascending runs of arr[pos, pos + len - 1], for grailMergeBoundRuns
+    private int[] grailRunBounds(T[] arr, int pos, int len, int runsHint) {
+        int[] bounds = new int[runsHint + 1];
+        int count = 0, end = pos + len;
+
+        for(int i = pos; i < end; i = grailRunEnd(arr, i, end)) {
+            if(count == bounds.length - 1) bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+            bounds[count++] = i;
+        }
+        bounds[count++] = end;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grailRunPlan(T[] arr, int pos, int len, GrailSortPlan plan) {
+        int bufferLen = plan.getBufferLen();
+        T[] buffer = bufferLen == 0 ? null : (T[]) GrailBufferPool.objects.acquire(bufferLen);
+        try {
+            switch(plan.getPath()) {
+            case PRESORTED:
+                // one run, and a descending one is strictly descending from its first pair on
+                grailPath(GrailSortMetrics.Path.PRESORTED);
+                if(this.grail.compare(arr[pos], arr[pos + 1]) > 0) grailReverse(arr, pos, len);
+                break;
+            case NATURAL_MERGE: {
+                long start = grailPhaseStart();
+                grailReverseRuns(arr, pos, len);
+                int[] bounds = grailRunBounds(arr, pos, len, plan.getRuns());
+                grailPhaseEnd(GrailSortMetrics.Phase.RUN_SCAN, start);
+
+                if(buffer != null) grailMergeBoundRuns(arr, bounds, buffer, bufferLen);
+                else grailMergeNaturalRuns(arr, pos, len, bounds.length - 1);
+                break;
+            }
+            case MERGE_SORT: {
+                long start = grailPhaseStart();
+                grailPath(GrailSortMetrics.Path.MERGE_SORT);
+                grailMergeSort(arr, pos, len, buffer, 0, bufferLen);
+                grailPhaseEnd(GrailSortMetrics.Phase.MERGE_SORT, start);
+                break;
+            }
+            default:
+                grailBlockSort(arr, pos, len, buffer, 0, bufferLen);
+            }
+        }
+        finally {
+            if(buffer != null) {
+                Arrays.fill(buffer, 0, bufferLen, null);
+                GrailBufferPool.objects.release(buffer);
+            }
+        }
+    }
+
+    private GrailSortPlan grailAutoSort(T[] arr, int pos, int len, int maxBufferLen) {
+        if(this.metrics == null) {
+            GrailSortPlan plan = grailPlan(arr, pos, len, maxBufferLen);
+            grailRunPlan(arr, pos, len, plan);
+            return plan;
+        }
+
+        this.metrics.grailSortStart(len);
+        try {
+            long start = grailPhaseStart();
+            GrailSortPlan plan = grailPlan(arr, pos, len, maxBufferLen);
+            grailPhaseEnd(GrailSortMetrics.Phase.PLAN, start);
+
+            grailRunPlan(arr, pos, len, plan);
+            return plan;
+        }
+        finally {
+            this.metrics.grailSortEnd();
+        }
+    }
+
+    /***** End Auto Sort *****/
+
+    /***** Instrumentation *****/
+
+    // Each hook is one null check when no GrailSortMetrics is attached. Hooks are
+    // placed per merge, per block or per phase, never per item, so the uninstrumented
+    // sort keeps its inner loops as they were.
+
+    private void grailCountSwaps(int swaps) {
+        if(this.metrics != null) this.metrics.swaps += swaps;
+    }
+
+    private void grailCountMoves(int moves) {
+        if(this.metrics != null) this.metrics.moves += moves;
     }
-    public void grailSortWithDynBuffer(SortType[] arr, SortComparator cmp) {
-        this.grail = cmp;
+
+    private void grailPath(GrailSortMetrics.Path path) {
+        if(this.metrics != null) this.metrics.grailPath(path);
+    }
+
+    private long grailPhaseStart() {
+        return this.metrics != null ? System.nanoTime() : 0;
+    }
+
+    private void grailPhaseEnd(GrailSortMetrics.Phase phase, long start) {
+        if(this.metrics != null) this.metrics.grailPhase(phase, start, System.nanoTime());
+    }
+
+    /***** End Instrumentation *****/
+
+    // Same checks as Arrays.sort(a, fromIndex, toIndex)
+    static void grailRangeCheck(int arrayLength, int fromIndex, int toIndex) {
+        if(fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+        }
+        if(fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex);
+        if(toIndex > arrayLength) throw new ArrayIndexOutOfBoundsException(toIndex);
+    }
+
+    static int grailDynBufferLen(int len) {
         int tempLen = 1;
-        while(tempLen * tempLen < arr.length) tempLen *= 2;
-        SortType[] ExtBuf = new SortType[tempLen];
-        grailCommonSort(arr, 0, arr.length, ExtBuf, 0, tempLen);
+        while((long) tempLen * tempLen < len) tempLen *= 2;
+        return tempLen;
+    }
+
+    // a merge sort never needs more than the shorter half of its longest merge
+    static int grailMaxBufferLen(int len) {
+        return len / 2;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grailSortWithPooledBuffer(T[] arr, int pos, int len, int bufferLen) {
+        Object[] ExtBuf = GrailBufferPool.objects.acquire(bufferLen);
+        try {
+            grailCommonSort(arr, pos, len, (T[]) ExtBuf, 0, bufferLen);
+        }
+        finally {
+            Arrays.fill(ExtBuf, 0, bufferLen, null);
+            GrailBufferPool.objects.release(ExtBuf);
+        }
+    }
+
+    /***** Batch Sorts *****/
+
+    // 0 if the batch is all insertion sorts and needs no buffer
+    static int grailBatchBufferLen(int maxLen) {
+        if(maxLen <= 32) return 0;
+        return Math.min(grailBatchBufferMax, Math.max(grailBatchBufferMin, grailMaxBufferLen(maxLen)));
+    }
+
+    // bounds[0] <= bounds[1] <= ... <= bounds[bounds.length - 1], all within the array
+    static void grailBoundsCheck(int arrayLength, int[] bounds) {
+        for(int i = 0; i + 1 < bounds.length; i++) grailRangeCheck(arrayLength, bounds[i], bounds[i + 1]);
+        if(bounds.length == 1) grailRangeCheck(arrayLength, bounds[0], bounds[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    void grailSortBatch(List<? extends T[]> arrays) {
+        int maxLen = 0;
+        for(T[] arr : arrays) maxLen = Math.max(maxLen, arr.length);
+
+        int bufferLen = grailBatchBufferLen(maxLen);
+        Object[] buffer = bufferLen == 0 ? null : GrailBufferPool.objects.acquire(bufferLen);
+        try {
+            for(T[] arr : arrays) grailCommonSort(arr, 0, arr.length, (T[]) buffer, 0, bufferLen);
+        }
+        finally {
+            if(buffer != null) {
+                // no merge parks more than the shorter half of an array
+                Arrays.fill(buffer, 0, Math.min(bufferLen, maxLen), null);
+                GrailBufferPool.objects.release(buffer);
+            }
+        }
+    }
+
+    // sorts the slices arr[bounds[i], bounds[i + 1] - 1] for i = from to to - 1
+    @SuppressWarnings("unchecked")
+    void grailSortSlices(T[] arr, int[] bounds, int from, int to) {
+        int maxLen = 0;
+        for(int i = from; i < to; i++) maxLen = Math.max(maxLen, bounds[i + 1] - bounds[i]);
+
+        int bufferLen = grailBatchBufferLen(maxLen);
+        Object[] buffer = bufferLen == 0 ? null : GrailBufferPool.objects.acquire(bufferLen);
+        try {
+            for(int i = from; i < to; i++) grailCommonSort(arr, bounds[i], bounds[i + 1] - bounds[i], (T[]) buffer, 0, bufferLen);
+        }
+        finally {
+            if(buffer != null) {
+                Arrays.fill(buffer, 0, Math.min(bufferLen, maxLen), null);
+                GrailBufferPool.objects.release(buffer);
+            }
+        }
+    }
+
+    /***** End Batch Sorts *****/
+
+    public void grailSortWithoutBuffer(T[] arr) {
+        grailCommonSort(arr, 0, arr.length, null, 0, 0);
+    }
+    public void grailSortWithoutBuffer(T[] arr, int fromIndex, int toIndex) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        grailCommonSort(arr, fromIndex, toIndex - fromIndex, null, 0, 0);
+    }
+
+    public void grailSortWithBuffer(T[] arr) {
+        grailSortWithPooledBuffer(arr, 0, arr.length, grailStaticBufferLen);
+    }
+    public void grailSortWithBuffer(T[] arr, int fromIndex, int toIndex) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        grailSortWithPooledBuffer(arr, fromIndex, toIndex - fromIndex, grailStaticBufferLen);
+    }
+
+    public void grailSortWithDynBuffer(T[] arr) {
+        grailSortWithPooledBuffer(arr, 0, arr.length, grailDynBufferLen(arr.length));
+    }
+    public void grailSortWithDynBuffer(T[] arr, int fromIndex, int toIndex) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        grailSortWithPooledBuffer(arr, fromIndex, toIndex - fromIndex, grailDynBufferLen(toIndex - fromIndex));
+    }
+
+    // Sorts with the caller's scratch array as the external buffer, as much of it as
+    // helps: up to half the range, where the sort becomes a plain merge sort.
+    // The scratch contents are overwritten, and it may still reference sorted items
+    // afterwards; reuse it across sorts to avoid allocating a buffer per sort.
+    public void grailSortWithScratch(T[] arr, T[] scratch) {
+        grailCommonSort(arr, 0, arr.length, scratch, 0, Math.min(scratch.length, grailMaxBufferLen(arr.length)));
+    }
+    public void grailSortWithScratch(T[] arr, int fromIndex, int toIndex, T[] scratch) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        int len = toIndex - fromIndex;
+        grailCommonSort(arr, fromIndex, len, scratch, 0, Math.min(scratch.length, grailMaxBufferLen(len)));
+    }
+
+    // Sorts with an external buffer of at most maxBufferLen items. Buffers up to the
+    // dynamic buffer's size come from the shared pool; larger ones are allocated for
+    // the sort and dropped afterwards, so the budget isn't held between sorts.
+    public void grailSortWithBudget(T[] arr, int maxBufferLen) {
+        grailSortWithBudget(arr, 0, arr.length, maxBufferLen);
+    }
+    public void grailSortWithBudget(T[] arr, int fromIndex, int toIndex, int maxBufferLen) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        if(maxBufferLen < 0) throw new IllegalArgumentException("maxBufferLen < 0: " + maxBufferLen);
+
+        int len = toIndex - fromIndex;
+        int bufferLen = Math.min(maxBufferLen, grailMaxBufferLen(len));
+
+        if(bufferLen <= grailDynBufferLen(len)) grailSortWithPooledBuffer(arr, fromIndex, len, bufferLen);
+        else {
+            @SuppressWarnings("unchecked")
+            T[] buffer = (T[]) new Object[bufferLen];
+            grailCommonSort(arr, fromIndex, len, buffer, 0, bufferLen);
+        }
+    }
+
+    // Picks the path from a quick look at the input: its length, how many runs it is
+    // made of, and roughly how many distinct items it holds (see GrailSortPlan), and
+    // returns the plan it followed. The external buffer is at most maxBufferLen items,
+    // by default eight times the dynamic buffer, and is borrowed from the shared pool.
+    public GrailSortPlan grailSortAuto(T[] arr) {
+        return grailSortAuto(arr, 0, arr.length);
+    }
+    public GrailSortPlan grailSortAuto(T[] arr, int fromIndex, int toIndex) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        int len = toIndex - fromIndex;
+        return grailAutoSort(arr, fromIndex, len, grailAutoBufferFactor * grailDynBufferLen(len));
+    }
+    public GrailSortPlan grailSortAuto(T[] arr, int fromIndex, int toIndex, int maxBufferLen) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        if(maxBufferLen < 0) throw new IllegalArgumentException("maxBufferLen < 0: " + maxBufferLen);
+        return grailAutoSort(arr, fromIndex, toIndex - fromIndex, maxBufferLen);
+    }
+
+    // Batch sorts for many small sorts at once: every array of the list, or every slice
+    // arr[bounds[i], bounds[i + 1] - 1], is sorted on its own. The whole batch shares one
+    // pooled buffer of half its longest array, at most 64K items, and every sort of more
+    // than 32 items is a merge sort with it. Sorts of 32 items or less are insertion sorts.
+    public void grailSortAll(List<? extends T[]> arrays) {
+        grailSortBatch(arrays);
+    }
+    public void grailSortSlices(T[] arr, int[] bounds) {
+        grailBoundsCheck(arr.length, bounds);
+        grailSortSlices(arr, bounds, 0, Math.max(bounds.length - 1, 0));
+    }
+
+    // Merges the sorted runs arr[bounds[i], bounds[i + 1] - 1] into one sorted run in
+    // place, where bounds holds the k + 1 boundaries of k adjacent runs. Equal items
+    // keep their order, items of earlier runs first. Runs that aren't sorted leave the
+    // result unsorted.
+    // Without scratch the merge needs O(1) extra memory: it gathers keys and an internal
+    // buffer from the items and block merges the runs, O(n log k) with O(k) comparisons
+    // to find runs that already meet in order.
+    public void grailMergeSortedRuns(T[] arr, int[] bounds) {
+        grailBoundsCheck(arr.length, bounds);
+        grailMergeAllRuns(arr, bounds, null, 0);
+    }
+    // With scratch, the caller's array bounds the extra memory. Runs are merged pairwise
+    // through it when the shorter of two runs fits, or when it is large enough for the
+    // merge sort path; otherwise the merge is the same as without scratch.
+    // The scratch contents are overwritten.
+    public void grailMergeSortedRuns(T[] arr, int[] bounds, T[] scratch) {
+        grailBoundsCheck(arr.length, bounds);
+        int len = bounds.length == 0 ? 0 : bounds[bounds.length - 1] - bounds[0];
+        int bufferLen = Math.min(scratch.length, grailMaxBufferLen(len));
+
+        if(grailMergeSortFits(len, bufferLen) || (bounds.length == 3 && Math.min(bounds[1] - bounds[0], bounds[2] - bounds[1]) <= bufferLen)) {
+            grailMergeAllRuns(arr, bounds, scratch, bufferLen);
+        }
+        else grailMergeAllRuns(arr, bounds, null, 0);
+    }
+
+    // Per-call comparator variants. Prefer keeping one GrailSort per comparator,
+    // which saves the small sorter allocation on every call.
+    public static <E> void grailSortWithoutBuffer(E[] arr, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithoutBuffer(arr);
+    }
+    public static <E> void grailSortWithoutBuffer(E[] arr, int fromIndex, int toIndex, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithoutBuffer(arr, fromIndex, toIndex);
+    }
+    public static <E> void grailSortWithBuffer(E[] arr, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithBuffer(arr);
+    }
+    public static <E> void grailSortWithBuffer(E[] arr, int fromIndex, int toIndex, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithBuffer(arr, fromIndex, toIndex);
+    }
+    public static <E> void grailSortWithDynBuffer(E[] arr, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithDynBuffer(arr);
+    }
+    public static <E> void grailSortWithDynBuffer(E[] arr, int fromIndex, int toIndex, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithDynBuffer(arr, fromIndex, toIndex);
+    }
+    public static <E> void grailSortWithScratch(E[] arr, E[] scratch, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithScratch(arr, scratch);
+    }
+    public static <E> void grailSortWithScratch(E[] arr, int fromIndex, int toIndex, E[] scratch, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithScratch(arr, fromIndex, toIndex, scratch);
+    }
+    public static <E> void grailSortWithBudget(E[] arr, int maxBufferLen, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithBudget(arr, maxBufferLen);
+    }
+    public static <E> void grailSortWithBudget(E[] arr, int fromIndex, int toIndex, int maxBufferLen, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortWithBudget(arr, fromIndex, toIndex, maxBufferLen);
+    }
+    public static <E> GrailSortPlan grailSortAuto(E[] arr, Comparator<? super E> cmp) {
+        return new GrailSort<E>(cmp).grailSortAuto(arr);
+    }
+    public static <E> GrailSortPlan grailSortAuto(E[] arr, int fromIndex, int toIndex, Comparator<? super E> cmp) {
+        return new GrailSort<E>(cmp).grailSortAuto(arr, fromIndex, toIndex);
+    }
+    public static <E> void grailSortAll(List<? extends E[]> arrays, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortAll(arrays);
+    }
+    public static <E> void grailSortSlices(E[] arr, int[] bounds, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortSlices(arr, bounds);
+    }
+    public static <E> void grailMergeSortedRuns(E[] arr, int[] bounds, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailMergeSortedRuns(arr, bounds);
+    }
+    public static <E> void grailMergeSortedRuns(E[] arr, int[] bounds, E[] scratch, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailMergeSortedRuns(arr, bounds, scratch);
+    }
+
+    // One-off stable sorts, using the static 512 item buffer
+    public static <T> void sort(T[] a, Comparator<? super T> c) {
+        new GrailSort<T>(c).grailSortWithBuffer(a);
+    }
+    public static <T> void sort(T[] a, int fromIndex, int toIndex, Comparator<? super T> c) {
+        new GrailSort<T>(c).grailSortWithBuffer(a, fromIndex, toIndex);
+    }
+    public static <T extends Comparable<? super T>> void sort(T[] a) {
+        GrailSort.<T>grailNaturalSorter().grailSortWithBuffer(a);
+    }
+    public static <T extends Comparable<? super T>> void sort(T[] a, int fromIndex, int toIndex) {
+        GrailSort.<T>grailNaturalSorter().grailSortWithBuffer(a, fromIndex, toIndex);
+    }
+
+    // O(n) on sorted or reverse sorted input and O(n log r) for r ascending or strictly
+    // descending runs, with O(1) extra memory. Input with many short runs falls back
+    // to the same block sort as grailSortWithoutBuffer.
+    public void grailSortAdaptive(T[] arr) {
+        grailAdaptiveSort(arr, 0, arr.length);
+    }
+    public void grailSortAdaptive(T[] arr, int fromIndex, int toIndex) {
+        grailRangeCheck(arr.length, fromIndex, toIndex);
+        grailAdaptiveSort(arr, fromIndex, toIndex - fromIndex);
+    }
+    public static <E> void grailSortAdaptive(E[] arr, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortAdaptive(arr);
+    }
+    public static <E> void grailSortAdaptive(E[] arr, int fromIndex, int toIndex, Comparator<? super E> cmp) {
+        new GrailSort<E>(cmp).grailSortAdaptive(arr, fromIndex, toIndex);
     }
-}
\ No newline at end of file
+}
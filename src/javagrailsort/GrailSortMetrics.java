@@ -0,0 +1,223 @@
+package javagrailsort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Counters and phase timings collected by an instrumented GrailSort, i.e. one built
+// with new GrailSort<>(cmp, metrics). Sorters built without metrics carry no hooks
+// beyond a null check per phase, merge or rotation, never per element.
+//
+// A metrics object accumulates over every sort it is attached to, until reset().
+// It is not thread-safe: sort with an instrumented GrailSort on one thread at a time,
+// which rules out ParallelGrailSort.
+//
+// When Java Flight Recorder is available and the src-jfr classes are on the classpath,
+// every instrumented sort also emits a javagrailsort.Sort event and one
+// javagrailsort.Phase event per timed phase.
+final public class GrailSortMetrics {
+
+    public enum Phase {
+        INSERT_SORT,     // whole array of 32 items or less
+        GET_KEYS,        // grailGetKeys
+        BUILD_BLOCKS,    // grailBuildBlocks
+        COMBINE_BLOCKS,  // every grailCombineBlocks round
+        FINAL_MERGE,     // sorting the keys and merging them back in
+        FEW_KEYS_SORT,   // grailFewKeysSort
+        RUN_SCAN,        // adaptive: reversing descending runs and counting runs
+        RUN_MERGE,       // adaptive: merging natural runs
+        MERGE_SORT,      // buffered merge sort, when the buffer is large enough
+        PLAN             // grailSortAuto: counting runs and sampling the input
+    }
+
+    public enum Path {
+        INSERTION,       // small array, binary insertion sort only
+        BUFFERED,        // enough keys for an internal buffer
+        KEYS_ONLY,       // too few keys for a buffer, merges without one
+        FEW_KEYS,        // fewer than 4 keys, stable partition around them
+        PRESORTED,       // adaptive: already a single run
+        NATURAL_MERGE,   // adaptive: natural runs merged with the internal buffer
+        MERGE_SORT       // buffer large enough for a plain merge sort, no keys
+    }
+
+    // Flight Recorder events, implemented by GrailSortEvents in src-jfr. That source set
+    // is built separately, on JDK 11 or later, and loaded by name, so this package never
+    // refers to jdk.jfr and compiles with --release 8.
+    interface Events {
+        Object grailSortStarted(int len);
+
+        void grailSortEnded(Object sortEvent, Path path, long comparisons, long swaps, long moves, long rotations);
+
+        void grailPhase(Phase phase, long start, long end);
+    }
+
+    // null when GrailSortEvents or jdk.jfr is missing
+    private static final Events grailEvents = grailLoadEvents();
+
+    long comparisons;
+    long swaps;
+    long moves;
+    long rotations;
+    long rotatedItems;
+    int combineRounds;
+
+    private long sorts;
+    private long items;
+    private long keysFound;
+    private long totalNanos;
+    private Path path;
+    private final long[] pathCounts = new long[Path.values().length];
+    private final long[] phaseNanos = new long[Phase.values().length];
+
+    private boolean sorting;
+    private long sortStart;
+    // the Events implementation's event for the current sort
+    private Object sortEvent;
+    private long[] sortCounters;
+
+    private static Events grailLoadEvents() {
+        try {
+            return (Events) Class.forName("javagrailsort.GrailSortEvents").getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    <T> Comparator<T> grailCounting(Comparator<? super T> cmp) {
+        return (a, b) -> {
+            this.comparisons++;
+            return cmp.compare(a, b);
+        };
+    }
+
+    void grailSortStart(int len) {
+        if(this.sorting) throw new IllegalStateException("GrailSortMetrics used by two sorts at once");
+
+        this.sorting = true;
+        this.sorts++;
+        this.items += len;
+        this.sortStart = System.nanoTime();
+
+        if(grailEvents != null) {
+            this.sortEvent = grailEvents.grailSortStarted(len);
+            this.sortCounters = new long[] { this.comparisons, this.swaps, this.moves, this.rotations };
+        }
+    }
+
+    void grailSortEnd() {
+        this.sorting = false;
+        this.totalNanos += System.nanoTime() - this.sortStart;
+        if(this.path != null) this.pathCounts[this.path.ordinal()]++;
+
+        if(this.sortEvent != null) {
+            grailEvents.grailSortEnded(this.sortEvent, this.path, this.comparisons - this.sortCounters[0],
+                                       this.swaps - this.sortCounters[1], this.moves - this.sortCounters[2],
+                                       this.rotations - this.sortCounters[3]);
+            this.sortEvent = null;
+        }
+    }
+
+    void grailPath(Path path) {
+        this.path = path;
+    }
+
+    void grailKeysFound(int keys) {
+        this.keysFound += keys;
+    }
+
+    void grailRotation(int lenA, int lenB) {
+        this.rotations++;
+        this.rotatedItems += lenA + lenB;
+    }
+
+    void grailPhase(Phase phase, long start, long end) {
+        this.phaseNanos[phase.ordinal()] += end - start;
+
+        if(grailEvents != null) grailEvents.grailPhase(phase, start, end);
+    }
+
+    public long getSorts() {
+        return this.sorts;
+    }
+
+    // total length of the sorted arrays or ranges
+    public long getItems() {
+        return this.items;
+    }
+
+    public long getComparisons() {
+        return this.comparisons;
+    }
+
+    // pairs of items exchanged
+    public long getSwaps() {
+        return this.swaps;
+    }
+
+    // single items copied, into the external buffer, out of it or within the array
+    public long getMoves() {
+        return this.moves;
+    }
+
+    public long getRotations() {
+        return this.rotations;
+    }
+
+    // sum of the lengths of all rotated ranges
+    public long getRotatedItems() {
+        return this.rotatedItems;
+    }
+
+    public long getCombineRounds() {
+        return this.combineRounds;
+    }
+
+    // distinct keys gathered by grailGetKeys, summed over all sorts
+    public long getKeysFound() {
+        return this.keysFound;
+    }
+
+    // path taken by the last sort, null before the first one
+    public Path getPath() {
+        return this.path;
+    }
+
+    public long getPathCount(Path path) {
+        return this.pathCounts[path.ordinal()];
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return this.phaseNanos[phase.ordinal()];
+    }
+
+    // wall time of all sorts, including the parts that belong to no phase
+    public long getTotalNanos() {
+        return this.totalNanos;
+    }
+
+    public void reset() {
+        if(this.sorting) throw new IllegalStateException("reset() during a sort");
+
+        this.comparisons = this.swaps = this.moves = this.rotations = this.rotatedItems = 0;
+        this.combineRounds = 0;
+        this.sorts = this.items = this.keysFound = this.totalNanos = 0;
+        this.path = null;
+        Arrays.fill(this.pathCounts, 0);
+        Arrays.fill(this.phaseNanos, 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.sorts).append(" sorts, ").append(this.items).append(" items, last path ").append(this.path)
+          .append(", ").append(this.comparisons).append(" comparisons, ").append(this.swaps).append(" swaps, ")
+          .append(this.moves).append(" moves, ").append(this.rotations).append(" rotations (")
+          .append(this.rotatedItems).append(" items), ").append(this.combineRounds).append(" combine rounds");
+
+        for(Phase phase : Phase.values()) {
+            long nanos = this.phaseNanos[phase.ordinal()];
+            if(nanos != 0) sb.append(", ").append(phase).append(' ').append(nanos / 1000).append(" us");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package javagrailsort;
+
+// The path grailSortAuto picked for one sort, and what it saw of the input to pick it:
+// - the runs, ascending or strictly descending, counted by a scan that stops after
+//   sqrt(length) + 1 runs, so input far from sorted costs O(sqrt(length)) comparisons;
+// - the distinct items, estimated from a sorted sample of at most 256 items.
+//
+// The path is given as a GrailSortMetrics.Path:
+// - INSERTION: 32 items or less, binary insertion sort;
+// - PRESORTED: a single run, reversed if it was descending;
+// - NATURAL_MERGE: at most sqrt(length) runs, merged pairwise through a buffer of at
+//   least 128 items, or block merged with keys without one;
+// - MERGE_SORT: a buffer of at least 128 items, or of at least 32 items when there are
+//   too few distinct items for the block sort's keys;
+// - BUFFERED, KEYS_ONLY or FEW_KEYS: the block sort, and the key path the estimate predicts.
+final public class GrailSortPlan {
+
+    private final int length;
+    private final GrailSortMetrics.Path path;
+    private final int bufferLen;
+    private final int runs;
+    private final int distinctEstimate;
+
+    GrailSortPlan(int length, GrailSortMetrics.Path path, int bufferLen, int runs, int distinctEstimate) {
+        this.length = length;
+        this.path = path;
+        this.bufferLen = bufferLen;
+        this.runs = runs;
+        this.distinctEstimate = distinctEstimate;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public GrailSortMetrics.Path getPath() {
+        return this.path;
+    }
+
+    // external buffer the sort borrowed, in items; 0 for none
+    public int getBufferLen() {
+        return this.bufferLen;
+    }
+
+    // runs counted, at most sqrt(length) + 1, which means more; -1 if not counted
+    public int getRuns() {
+        return this.runs;
+    }
+
+    // -1 if the path was picked before sampling
+    public int getDistinctEstimate() {
+        return this.distinctEstimate;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.length).append(" items, path ").append(this.path).append(", buffer ").append(this.bufferLen);
+
+        if(this.runs >= 0) {
+            sb.append(", ");
+            if((long) this.runs * this.runs > this.length) sb.append("more than ").append(this.runs - 1);
+            else sb.append(this.runs);
+            sb.append(" runs");
+        }
+        if(this.distinctEstimate >= 0) sb.append(", about ").append(this.distinctEstimate).append(" distinct");
+        return sb.toString();
+    }
+}
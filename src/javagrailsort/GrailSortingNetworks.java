@@ -0,0 +1,139 @@
+package javagrailsort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Branch-free sorting networks for the small sorts of IntGrailSort and LongGrailSort.
+//
+// The network is Batcher's odd-even merge sort for 32 items (191 comparators). A
+// comparator is a Math.min/Math.max pair, which the JIT compiles to conditional
+// moves, so a small sort costs the same on any input and never mispredicts a branch.
+// Shorter ranges reuse the same network: pad the range with +infinity, and every
+// comparator that touches the padding leaves it where it is, so the comparators
+// that reach past len are simply dropped.
+//
+// Networks don't keep equal items in order, which is fine for plain ints and longs
+// only. Floats and doubles stay with insertion sort, since Math.min would mix up
+// NaNs and -0.0 differently from Float.compare/Double.compare.
+//
+// When the Vector API kernels of src-vector are available, they take over the small
+// sorts and the merges through the external buffer, and this scalar network is the
+// fallback.
+final class GrailSortingNetworks {
+
+    final static int grailNetworkMax = 32;
+
+    // comparators for each length, as pairs of positions, lower position first
+    final private static int[][] grailNetworks = grailBuildNetworks();
+
+    // Bitonic sorting and merging kernels on jdk.incubator.vector, implemented by
+    // GrailVectorKernels in src-vector. That source set is built separately, on JDK 16
+    // or later, and loaded by name, so this package compiles with --release 8.
+    interface Kernels {
+        // len <= grailNetworkMax; false, with arr left alone, if the kernel has no network for len
+        boolean grailSort(int[] arr, int pos, int len);
+
+        boolean grailSort(long[] arr, int pos, int len);
+
+        // arr[pos, pos + len1 - 1] ++ arr[pos + len1, pos + len1 + len2 - 1] -> merged in place,
+        // the shorter run through buffer; false, with nothing moved, if the runs are too short
+        boolean grailMergeWithExtBuf(int[] arr, int pos, int len1, int len2, int[] buffer, int bufferPos);
+
+        boolean grailMergeWithExtBuf(long[] arr, int pos, int len1, int len2, long[] buffer, int bufferPos);
+    }
+
+    // null when GrailVectorKernels or jdk.incubator.vector is missing
+    private static final Kernels grailKernels = grailLoadKernels();
+
+    private GrailSortingNetworks() {}
+
+    private static Kernels grailLoadKernels() {
+        try {
+            return (Kernels) Class.forName("javagrailsort.GrailVectorKernels").getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    static boolean grailVectorized() {
+        return grailKernels != null;
+    }
+
+    private static int[][] grailBuildNetworks() {
+        List<int[]> comparators = new ArrayList<>();
+
+        for(int part = 1; part < grailNetworkMax; part *= 2) {
+            for(int step = part; step >= 1; step /= 2) {
+                for(int start = step % part; start + step < grailNetworkMax; start += 2 * step) {
+                    for(int i = 0; i < Math.min(step, grailNetworkMax - start - step); i++) {
+                        int low = start + i, high = start + i + step;
+                        if(low / (2 * part) == high / (2 * part)) comparators.add(new int[] { low, high });
+                    }
+                }
+            }
+        }
+
+        int[][] networks = new int[grailNetworkMax + 1][];
+        for(int len = 0; len <= grailNetworkMax; len++) {
+            int count = 0;
+            for(int[] comparator : comparators) {
+                if(comparator[1] < len) count++;
+            }
+
+            int[] network = new int[2 * count];
+            int next = 0;
+            for(int[] comparator : comparators) {
+                if(comparator[1] < len) {
+                    network[next++] = comparator[0];
+                    network[next++] = comparator[1];
+                }
+            }
+            networks[len] = network;
+        }
+        return networks;
+    }
+
+    // len <= grailNetworkMax
+    static void grailSort(int[] arr, int pos, int len) {
+        if(grailKernels == null || !grailKernels.grailSort(arr, pos, len)) grailNetworkSort(arr, pos, len);
+    }
+
+    // len <= grailNetworkMax, without the kernels
+    static void grailNetworkSort(int[] arr, int pos, int len) {
+        int[] network = grailNetworks[len];
+
+        for(int i = 0; i < network.length; i += 2) {
+            int low = pos + network[i], high = pos + network[i + 1];
+            int a = arr[low], b = arr[high];
+            arr[low] = Math.min(a, b);
+            arr[high] = Math.max(a, b);
+        }
+    }
+
+    // len <= grailNetworkMax
+    static void grailSort(long[] arr, int pos, int len) {
+        if(grailKernels == null || !grailKernels.grailSort(arr, pos, len)) grailNetworkSort(arr, pos, len);
+    }
+
+    // len <= grailNetworkMax, without the kernels
+    static void grailNetworkSort(long[] arr, int pos, int len) {
+        int[] network = grailNetworks[len];
+
+        for(int i = 0; i < network.length; i += 2) {
+            int low = pos + network[i], high = pos + network[i + 1];
+            long a = arr[low], b = arr[high];
+            arr[low] = Math.min(a, b);
+            arr[high] = Math.max(a, b);
+        }
+    }
+
+    // false if the caller's scalar merge has to do it
+    static boolean grailMergeWithExtBuf(int[] arr, int pos, int len1, int len2, int[] buffer, int bufferPos) {
+        return grailKernels != null && grailKernels.grailMergeWithExtBuf(arr, pos, len1, len2, buffer, bufferPos);
+    }
+
+    static boolean grailMergeWithExtBuf(long[] arr, int pos, int len1, int len2, long[] buffer, int bufferPos) {
+        return grailKernels != null && grailKernels.grailMergeWithExtBuf(arr, pos, len1, len2, buffer, bufferPos);
+    }
+}
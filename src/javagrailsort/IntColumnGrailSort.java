@@ -0,0 +1,1217 @@
+// Generated by codegen/GrailEngineGenerator.java from codegen/engines/IntColumnGrailSort.engine
+// and codegen/GrailEngine.template: edit those and rerun it, not this file.
+package javagrailsort;
+
+/********* Grail sorting *********************************/
+/*                                                       */
+/* (c) 2013 by Andrey Astrelin                           */
+/* Refactored by MusicTheorist                           */
+/*                                                       */
+/* Stable sorting that works in O(N*log(N)) worst time   */
+/* and uses O(1) extra memory                            */
+/*                                                       */
+/* Sorts a table stored as columns: a int[] key column   */
+/* is Grail sorted in place, and every swap, rotation    */
+/* and buffer move is made on the attached columns too   */
+/* (int[], long[], float[] or double[], in any mix), so  */
+/* no row objects are built. Equal keys keep the order   */
+/* of their rows. Each buffered mode gives every column  */
+/* an external buffer of its own type.                   */
+/*                                                       */
+/* For sorting w/o external buffer                       */
+/* use grailSortWithoutBuffer()                          */
+/*                                                       */
+/* For sorting w/ fixed external buffer (512 items)      */
+/* use grailSortWithBuffer()                             */
+/*                                                       */
+/* For sorting w/ dynamic external buffer (sqrt(length)) */
+/* use grailSortWithDynBuffer()                          */
+/*                                                       */
+/* For adaptive sorting of data made of sorted runs      */
+/* use grailSortAdaptive()                               */
+/*                                                       */
+/*********************************************************/
+
+final public class IntColumnGrailSort {
+
+    final private static int grailStaticBufferLen = 512;
+
+    // the attached columns, moved in lockstep with the keys
+    final private GrailColumns columns;
+
+    private IntColumnGrailSort(GrailColumns columns) {
+        this.columns = columns;
+    }
+
+    // Rotations whose shorter side is at most grailReverseRotateMax items, and at most
+    // 1 / grailSkewedRotation of the whole, are done by triple reversal
+    final private static int grailReverseRotateMax = 8;
+    final private static int grailSkewedRotation = 8;
+
+    // Without a buffer, the few keys sort partitions ranges of this many items or less in place
+    final private static int grailPartitionRunLen = 16;
+
+    private void grailSwap(int[] arr, int a, int b) {
+        int temp = arr[a];
+        arr[a] = arr[b];
+        arr[b] = temp;
+
+        this.columns.swap(a, b);
+    }
+
+    private void grailMove(int[] arr, int to, int from) {
+        arr[to] = arr[from];
+        this.columns.move(to, from);
+    }
+
+    private void grailCopy(int[] arr, int from, int to, int len) {
+        System.arraycopy(arr, from, arr, to, len);
+        this.columns.copy(from, to, len);
+    }
+
+    private void grailToBuffer(int[] arr, int from, int[] buffer, int bufferPos, int len) {
+        System.arraycopy(arr, from, buffer, bufferPos, len);
+        this.columns.toBuffer(from, bufferPos, len);
+    }
+
+    private void grailFromBuffer(int[] buffer, int bufferPos, int[] arr, int to, int len) {
+        System.arraycopy(buffer, bufferPos, arr, to, len);
+        this.columns.fromBuffer(bufferPos, to, len);
+    }
+
+    private void grailMultiSwap(int[] arr, int a, int b, int swapsLeft) {
+        this.columns.swapRange(a, b, swapsLeft);
+
+        while(swapsLeft != 0) {
+            int temp = arr[a];
+            arr[a++] = arr[b];
+            arr[b++] = temp;
+            swapsLeft--;
+        }
+    }
+
+    /***** Rotations *****/
+
+    // arr[pos, pos + lenA - 1] ++ arr[pos + lenA, pos + lenA + lenB - 1] -> B ++ A
+    // The strategy is picked by the lengths of the two sides:
+    // - the shorter side fits in the external buffer: it is parked there and the
+    //   longer side moves with one copy;
+    // - one side is a single item: it waits in a local while the other side moves;
+    // - a side of a few items against a much longer one: triple reversal, three
+    //   sequential passes instead of many block swaps of a few items each;
+    // - otherwise Gries-Mills block swaps.
+    private void grailRotate(int[] array, int pos, int lenA, int lenB) {
+        grailRotate(array, pos, lenA, lenB, null, 0, 0);
+    }
+
+    // buffer[bufferPos, bufferPos + bufferLen - 1] - scratch space, its contents are overwritten
+    private void grailRotate(int[] array, int pos, int lenA, int lenB, int[] buffer, int bufferPos, int bufferLen) {
+        if(lenA == 0 || lenB == 0) return;
+
+        if(lenA <= lenB) {
+            if(lenA <= bufferLen) {
+                grailToBuffer(array, pos, buffer, bufferPos, lenA);
+                grailCopy(array, pos + lenA, pos, lenB);
+                grailFromBuffer(buffer, bufferPos, array, pos + lenB, lenA);
+                return;
+            }
+            if(lenA == 1) {
+                int item = array[pos];
+                System.arraycopy(array, pos + 1, array, pos, lenB);
+                array[pos + lenB] = item;
+                this.columns.shiftLeft(pos, lenB);
+                return;
+            }
+        }
+        else {
+            if(lenB <= bufferLen) {
+                grailToBuffer(array, pos + lenA, buffer, bufferPos, lenB);
+                grailCopy(array, pos, pos + lenB, lenA);
+                grailFromBuffer(buffer, bufferPos, array, pos, lenB);
+                return;
+            }
+            if(lenB == 1) {
+                int item = array[pos + lenA];
+                System.arraycopy(array, pos, array, pos + 1, lenA);
+                array[pos] = item;
+                this.columns.shiftRight(pos, lenA);
+                return;
+            }
+        }
+
+        int shortLen = lenA < lenB ? lenA : lenB;
+
+        if(shortLen <= grailReverseRotateMax && shortLen * grailSkewedRotation <= lenA + lenB) {
+            grailReverse(array, pos, lenA);
+            grailReverse(array, pos + lenA, lenB);
+            grailReverse(array, pos, lenA + lenB);
+        }
+        else grailBlockSwapRotate(array, pos, lenA, lenB);
+    }
+
+    // Gries-Mills: swaps the shorter side into place and repeats on the rest
+    private void grailBlockSwapRotate(int[] array, int pos, int lenA, int lenB) {
+        while(lenA != 0 && lenB != 0) {
+            if(lenA <= lenB) {
+                grailMultiSwap(array, pos, pos + lenA, lenA);
+                pos += lenA;
+                lenB -= lenA;
+            }
+            else {
+                grailMultiSwap(array, pos + (lenA - lenB), pos + lenA, lenB);
+                lenA -= lenB;
+            }
+        }
+    }
+
+    /***** End Rotations *****/
+
+    @SuppressWarnings("fallthrough")
+    private void grailInsertSort(int[] arr, int pos, int len) {
+        for(int i = 1; i < len; i++) {
+            int insertPos = pos + grailBinSearch(arr, pos, i, pos + i, false);
+
+            if(insertPos < pos + i) {
+                this.columns.shiftRight(insertPos, (pos + i) - insertPos);
+
+                int item = arr[pos + i];
+
+                int shifts = (pos + i) - insertPos;
+                switch(shifts) {
+                    case 2:  arr[insertPos + 2] = arr[insertPos + 1];
+                    case 1:  arr[insertPos + 1] = arr[insertPos];
+                             break;
+                    default: System.arraycopy(arr, insertPos, arr, insertPos + 1, shifts);
+                }
+                arr[insertPos] = item;
+            }
+        }
+    }
+
+    //boolean argument determines direction
+    private int grailBinSearch(int[] arr, int pos, int len, int keyPos, boolean isLeft) {
+        int key = arr[keyPos];
+        int left = -1, right = len;
+
+        while(left < right - 1) {
+            int mid = left + ((right - left) / 2);
+
+            if(isLeft) {
+                if(Integer.compare(arr[pos + mid], key) >= 0) {
+                    right = mid;
+                }
+                else left = mid;
+            }
+            else {
+                if(Integer.compare(arr[pos + mid], key) > 0) {
+                    right = mid;
+                }
+                else left = mid;
+            }
+        }
+        return right;
+    }
+
+    // Same result as grailBinSearch for a key from outside arr[pos, pos + len - 1], but
+    // probes 1, 3, 7, 15... items in before the binary search, so it takes O(log k)
+    // comparisons when the answer is k
+    private int grailGallop(int[] arr, int pos, int len, int key, boolean isLeft) {
+        int left = -1, right = 0, step = 1;
+
+        while(right < len) {
+            int cmp = Integer.compare(arr[pos + right], key);
+            if(isLeft ? cmp >= 0 : cmp > 0) break;
+
+            left = right;
+            right = len - right > step ? right + step : len;
+            step *= 2;
+        }
+        return grailBinSearchBetween(arr, pos, left, right, key, isLeft);
+    }
+
+    // grailGallop probing from the end: 1, 2, 4, 8... items back
+    private int grailGallopBack(int[] arr, int pos, int len, int key, boolean isLeft) {
+        int left = len - 1, right = len, step = 1;
+
+        while(left >= 0) {
+            int cmp = Integer.compare(arr[pos + left], key);
+            if(isLeft ? cmp < 0 : cmp <= 0) break;
+
+            right = left;
+            left = left >= step ? left - step : -1;
+            step *= 2;
+        }
+        return grailBinSearchBetween(arr, pos, left, right, key, isLeft);
+    }
+
+    // the answer is known to be in (left, right]
+    private int grailBinSearchBetween(int[] arr, int pos, int left, int right, int key, boolean isLeft) {
+        while(left < right - 1) {
+            int mid = left + ((right - left) / 2);
+            int cmp = Integer.compare(arr[pos + mid], key);
+
+            if(isLeft ? cmp >= 0 : cmp > 0) right = mid;
+            else left = mid;
+        }
+        return right;
+    }
+
+    // Keys are gathered in two levels. New keys go into a small sorted pending
+    // block that rolls along behind the scan; every ~sqrt(numKeys) keys it is
+    // merged into the main key block, so the main block rolls forward only
+    // ~sqrt(numKeys) times instead of once per key.
+    // cost: 2 * len + O(numKeys^1.5)
+    // buffer - scratch space for the rotations, null if there is none
+    private int grailGetKeys(int[] arr, int pos, int len, int numKeys, int[] buffer, int bufferPos, int bufferLen) {
+        int pendingMax = (int) Math.sqrt(numKeys) + 1;
+        int keysPos = 0, keysLen = 0;
+        int pendingPos = 0, pendingLen = 1;  // first key is always here
+        int dist = 1;
+
+        while(dist < len && keysLen + pendingLen < numKeys) {
+            //Binary Search left
+            int loc = grailBinSearch(arr, pos + keysPos, keysLen, pos + dist, true);
+
+            if(loc == keysLen || Integer.compare(arr[pos + dist], arr[pos + (keysPos + loc)]) != 0) {
+                //Binary Search left
+                loc = grailBinSearch(arr, pos + pendingPos, pendingLen, pos + dist, true);
+
+                if(loc == pendingLen || Integer.compare(arr[pos + dist], arr[pos + (pendingPos + loc)]) != 0) {
+                    grailRotate(arr, pos + pendingPos, pendingLen, dist - (pendingPos + pendingLen), buffer, bufferPos, bufferLen);
+
+                    pendingPos = dist - pendingLen;
+
+                    grailRotate(arr, pos + (pendingPos + loc), pendingLen - loc, 1);
+                    pendingLen++;
+
+                    if(pendingLen == pendingMax) {
+                        keysPos = grailMergeKeys(arr, pos, keysPos, keysLen, pendingPos, pendingLen, buffer, bufferPos, bufferLen);
+                        keysLen += pendingLen;
+
+                        pendingPos += pendingLen;
+                        pendingLen = 0;
+                    }
+                }
+            }
+            dist++;
+        }
+        keysPos = grailMergeKeys(arr, pos, keysPos, keysLen, pendingPos, pendingLen, buffer, bufferPos, bufferLen);
+        keysLen += pendingLen;
+
+        grailRotate(arr, pos, keysPos, keysLen, buffer, bufferPos, bufferLen);
+
+        return keysLen;
+    }
+
+    // rolls the main key block up to the pending block and merges them;
+    // returns the new position of the main key block
+    private int grailMergeKeys(int[] arr, int pos, int keysPos, int keysLen, int pendingPos, int pendingLen,
+                               int[] buffer, int bufferPos, int bufferLen) {
+        grailRotate(arr, pos + keysPos, keysLen, pendingPos - (keysPos + keysLen), buffer, bufferPos, bufferLen);
+
+        keysPos = pendingPos - keysLen;
+
+        // keys are distinct, so the merge can't break stability
+        grailMergeWithoutBuffer(arr, pos + keysPos, keysLen, pendingLen, buffer, bufferPos, bufferLen);
+
+        return keysPos;
+    }
+
+    // cost: min(len1, len2)^2 + max(len1, len2)
+    // The searches gallop from the near end of the longer run, where skewed and
+    // nearly ordered merges find their answer.
+    // buffer - scratch space for the rotations, null if there is none
+    private void grailMergeWithoutBuffer(int[] arr, int pos, int len1, int len2, int[] buffer, int bufferPos, int bufferLen) {
+        if(len1 < len2) {
+            while(len1 != 0) {
+                //Gallop left
+                int loc = grailGallop(arr, pos + len1, len2, arr[pos], true);
+
+                if(loc != 0) {
+                    grailRotate(arr, pos, len1, loc, buffer, bufferPos, bufferLen);
+
+                    pos += loc;
+                    len2 -= loc;
+                }
+
+                if(len2 == 0) break;
+
+                do {
+                    pos++;
+                    len1--;
+                } while(len1 != 0 && Integer.compare(arr[pos], arr[pos + len1]) <= 0);
+            }
+        }
+        else {
+            while(len2 != 0) {
+                //Gallop right, from the end
+                int loc = grailGallopBack(arr, pos, len1, arr[pos + (len1 + len2 - 1)], false);
+
+                if(loc != len1) {
+                    grailRotate(arr, pos + loc, len1 - loc, len2, buffer, bufferPos, bufferLen);
+                    len1 = loc;
+                }
+
+                if(len1 == 0) break;
+
+                do {
+                    len2--;
+                } while(len2 != 0 && Integer.compare(arr[pos + len1 - 1], arr[pos + len1 + len2 - 1]) <= 0);
+            }
+        }
+    }
+
+    // arr - starting array. arr[0 - blockLen..-1] - buffer (if havebuf).
+    // blockLen - length of regular blocks. First blockCount blocks are stable sorted by 1st elements and key-coded
+    // keysPos - arrays of keys, in same order as blocks. keysPos < midkey means stream A
+    // aBlockCount are regular blocks from stream A.
+    // lastLen is length of last (irregular) block from stream B, that should go before aBlockCount blocks.
+    // lastLen = 0 requires aBlockCount = 0 (no irregular blocks). lastLen > 0, aBlockCount = 0 is possible.
+    // buffer - scratch space for the rotations (if not havebuf), null if there is none
+    private void grailMergeBuffersLeft(int[] arr, int keysPos, int midkey, int pos, int blockCount, int blockLen,
+                                              boolean havebuf, int aBlockCount, int lastLen,
+                                              int[] buffer, int bufferPos, int bufferLen) {
+
+        if(blockCount == 0) {
+            int aBlocksLen = aBlockCount * blockLen;
+
+            if(havebuf) grailMergeLeft(arr, pos, aBlocksLen, lastLen, 0 - blockLen);
+            else grailMergeWithoutBuffer(arr, pos, aBlocksLen, lastLen, buffer, bufferPos, bufferLen);
+
+            return;
+        }
+
+        int leftOverLen, processIndex;
+        leftOverLen = processIndex = blockLen;
+
+        int leftOverFrag = Integer.compare(arr[keysPos], arr[midkey]) < 0 ? 0 : 1;
+        int restToProcess;
+
+        for(int keyIndex = 1; keyIndex < blockCount; keyIndex++, processIndex += blockLen) {
+            restToProcess = processIndex - leftOverLen;
+            int nextFrag = Integer.compare(arr[keysPos + keyIndex], arr[midkey]) < 0 ? 0 : 1;
+
+            if(nextFrag == leftOverFrag) {
+                if(havebuf) grailMultiSwap(arr, pos + restToProcess - blockLen, pos + restToProcess, leftOverLen);
+
+                restToProcess = processIndex;
+                leftOverLen = blockLen;
+            }
+            else {
+                if(havebuf) {
+                    int results = grailSmartMergeWithBuffer(arr, pos + restToProcess, leftOverLen, leftOverFrag, blockLen);
+
+                    leftOverLen = results >>> 1;
+                    leftOverFrag = results & 1;
+                }
+                else {
+                    int results = grailSmartMergeWithoutBuffer(arr, pos + restToProcess, leftOverLen, leftOverFrag, blockLen,
+                                                               buffer, bufferPos, bufferLen);
+
+                    leftOverLen = results >>> 1;
+                    leftOverFrag = results & 1;
+                }
+            }
+        }
+
+        restToProcess = processIndex - leftOverLen;
+
+        if(lastLen != 0) {
+            if(leftOverFrag != 0) {
+                if(havebuf) grailMultiSwap(arr, pos + restToProcess - blockLen, pos + restToProcess, leftOverLen);
+
+                restToProcess = processIndex;
+                leftOverLen = blockLen * aBlockCount;
+                leftOverFrag = 0;
+            }
+            else leftOverLen += blockLen * aBlockCount;
+
+            if(havebuf) grailMergeLeft(arr, pos + restToProcess, leftOverLen, lastLen, 0 - blockLen);
+            else grailMergeWithoutBuffer(arr, pos + restToProcess, leftOverLen, lastLen, buffer, bufferPos, bufferLen);
+        }
+        else {
+            if(havebuf) grailMultiSwap(arr, pos + restToProcess, pos + (restToProcess - blockLen), leftOverLen);
+        }
+    }
+
+    // arr[dist..-1] - buffer, arr[0, leftLen - 1] ++ arr[leftLen, leftLen + rightLen - 1]
+    // -> arr[dist, dist + leftLen + rightLen - 1]
+    private void grailMergeLeft(int[] arr, int pos, int leftLen, int rightLen, int dist) {
+        int left = 0, right = leftLen;
+
+        rightLen += leftLen;
+
+        while(right < rightLen) {
+            if(left == leftLen || Integer.compare(arr[pos + left], arr[pos + right]) > 0) {
+                grailSwap(arr, pos + (dist++), pos + (right++));
+            }
+            else grailSwap(arr, pos + (dist++), pos + (left++));
+        }
+        if(dist != left) grailMultiSwap(arr, pos + dist, pos + left, leftLen - left);
+    }
+    private void grailMergeRight(int[] arr, int pos, int leftLen, int rightLen, int dist) {
+        int mergedPos = leftLen + rightLen + dist - 1;
+        int right = leftLen + rightLen - 1, left = leftLen - 1;
+
+        while(left >= 0) {
+            if(right < leftLen || Integer.compare(arr[pos + left], arr[pos + right]) > 0) {
+                grailSwap(arr, pos + (mergedPos--), pos + (left--));
+            }
+            else grailSwap(arr, pos + (mergedPos--), pos + (right--));
+        }
+        if(right != mergedPos) {
+            while(right >= leftLen) grailSwap(arr, pos + (mergedPos--), pos + (right--));
+        }
+    }
+
+    // The smart merges hand back two values per merged block. They are packed into
+    // one int, length in the high bits and fragment (0 or 1) in the low bit, so the
+    // block merge loops don't allocate a result object for every block.
+    private static int grailPackState(int leftOverLen, int leftOverFrag) {
+        return (leftOverLen << 1) | leftOverFrag;
+    }
+
+    //returns the leftover length and the leftover fragment, packed by grailPackState
+    private int grailSmartMergeWithoutBuffer(int[] arr, int pos, int leftOverLen, int leftOverFrag, int regBlockLen,
+                                             int[] buffer, int bufferPos, int bufferLen) {
+        if(regBlockLen == 0) return grailPackState(leftOverLen, leftOverFrag);
+
+        int len1 = leftOverLen, len2 = regBlockLen;
+        int typeFrag = 1 - leftOverFrag; //1 if inverted
+
+        if(len1 != 0 && Integer.compare(arr[pos + (len1 - 1)], arr[pos + len1]) >= typeFrag) {
+            while(len1 != 0) {
+                int foundLen;
+
+                //Gallop left, else gallop right
+                if (typeFrag != 0) foundLen = grailGallop(arr, pos + len1, len2, arr[pos], true);
+                else foundLen = grailGallop(arr, pos + len1, len2, arr[pos], false);
+
+                if(foundLen != 0) {
+                    grailRotate(arr, pos, len1, foundLen, buffer, bufferPos, bufferLen);
+
+                    pos += foundLen;
+                    len2 -= foundLen;
+                }
+
+                if(len2 == 0) return grailPackState(len1, leftOverFrag);
+
+                do {
+                    pos++;
+                    len1--;
+                } while(len1 != 0 && Integer.compare(arr[pos], arr[pos + len1]) < typeFrag);
+            }
+        }
+        return grailPackState(len2, typeFrag);
+    }
+
+    //returns the leftover length and the leftover fragment, packed by grailPackState
+    private int grailSmartMergeWithBuffer(int[] arr, int pos, int leftOverLen, int leftOverFrag, int blockLen) {
+        int dist = 0 - blockLen;
+        int left = 0, right = leftOverLen;
+        int leftEnd = right, rightEnd = right + blockLen;
+        int typeFrag = 1 - leftOverFrag;  // 1 if inverted
+
+        while(left < leftEnd && right < rightEnd) {
+            if(Integer.compare(arr[pos + left], arr[pos + right]) < typeFrag) {
+                grailSwap(arr, pos + (dist++), pos + (left++));
+            }
+            else grailSwap(arr, pos + (dist++), pos + (right++));
+        }
+
+        int length, fragment = leftOverFrag;
+
+        if(left < leftEnd) {
+            length = leftEnd - left;
+
+            while(left < leftEnd) grailSwap(arr, pos + (--leftEnd), pos + (--rightEnd));
+        }
+        else {
+            length = rightEnd - right;
+            fragment = typeFrag;
+        }
+        return grailPackState(length, fragment);
+    }
+
+
+    /***** Sort With Extra Buffer *****/
+
+    //returns the leftover length and the leftover fragment, packed by grailPackState
+    private int grailSmartMergeWithXBuf(int[] arr, int pos, int leftOverLen, int leftOverFrag, int blockLen) {
+        int dist = 0 - blockLen;
+        int left = 0, right = leftOverLen;
+        int leftEnd = right, rightEnd = right + blockLen;
+        int typeFrag = 1 - leftOverFrag;  // 1 if inverted
+
+        while(left < leftEnd && right < rightEnd) {
+            if(Integer.compare(arr[pos + left], arr[pos + right]) < typeFrag) {
+                grailMove(arr, pos + (dist++), pos + (left++));
+            }
+            else grailMove(arr, pos + (dist++), pos + (right++));
+        }
+
+        int length, fragment = leftOverFrag;
+
+        if(left < leftEnd) {
+            length = leftEnd - left;
+
+            while(left < leftEnd) grailMove(arr, pos + (--rightEnd), pos + (--leftEnd));
+        }
+        else {
+            length = rightEnd - right;
+            fragment = typeFrag;
+        }
+        return grailPackState(length, fragment);
+    }
+
+    // arr[dist..-1] - free, arr[0, leftEnd - 1] ++ arr[leftEnd, leftEnd + rightEnd - 1]
+    // -> arr[dist, dist + leftEnd + rightEnd - 1]
+    private void grailMergeLeftWithXBuf(int[] arr, int pos, int leftEnd, int rightEnd, int dist) {
+        int left = 0, right = leftEnd;
+        rightEnd += leftEnd;
+
+        while(right < rightEnd) {
+            if(left == leftEnd || Integer.compare(arr[pos + left], arr[pos + right]) > 0) {
+                grailMove(arr, pos + (dist++), pos + (right++));
+            }
+            else grailMove(arr, pos + (dist++), pos + (left++));
+        }
+        if(dist != left) {
+            while(left < leftEnd) grailMove(arr, pos + (dist++), pos + (left++));
+        }
+    }
+
+    // arr - starting array. arr[0 - regBlockLen..-1] - buffer (if havebuf).
+    // regBlockLen - length of regular blocks. First blockCount blocks are stable sorted by 1st elements and key-coded
+    // keysPos - where keys are in array, in same order as blocks. keysPos < midkey means stream A
+    // aBlockCount are regular blocks from stream A.
+    // lastLen is length of last (irregular) block from stream B, that should go before aBlockCount blocks.
+    // lastLen = 0 requires aBlockCount = 0 (no irregular blocks). lastLen > 0, aBlockCount = 0 is possible.
+    private void grailMergeBuffersLeftWithXBuf(int[] arr, int keysPos, int midkey, int pos, int blockCount,
+                                                      int regBlockLen, int aBlockCount, int lastLen) {
+
+        if(blockCount == 0) {
+            int aBlocksLen = aBlockCount * regBlockLen;
+
+            grailMergeLeftWithXBuf(arr, pos, aBlocksLen, lastLen, 0 - regBlockLen);
+            return;
+        }
+
+        int leftOverLen, processIndex;
+        leftOverLen = processIndex = regBlockLen;
+
+        int leftOverFrag = Integer.compare(arr[keysPos], arr[midkey]) < 0 ? 0 : 1;
+        int restToProcess;
+
+        for(int keyIndex = 1; keyIndex < blockCount; keyIndex++, processIndex += regBlockLen) {
+            restToProcess = processIndex - leftOverLen;
+            int nextFrag = Integer.compare(arr[keysPos + keyIndex], arr[midkey]) < 0 ? 0 : 1;
+
+            if(nextFrag == leftOverFrag) {
+                grailCopy(arr, pos + restToProcess, pos + restToProcess - regBlockLen, leftOverLen);
+
+                restToProcess = processIndex;
+                leftOverLen = regBlockLen;
+            }
+            else {
+                int results = grailSmartMergeWithXBuf(arr, pos + restToProcess, leftOverLen, leftOverFrag, regBlockLen);
+
+                leftOverLen = results >>> 1;
+                leftOverFrag = results & 1;
+            }
+        }
+        restToProcess = processIndex - leftOverLen;
+
+        if(lastLen != 0) {
+            if(leftOverFrag != 0) {
+                grailCopy(arr, pos + restToProcess, pos + restToProcess - regBlockLen, leftOverLen);
+
+                restToProcess = processIndex;
+                leftOverLen = regBlockLen * aBlockCount;
+                leftOverFrag = 0;
+            }
+            else leftOverLen += regBlockLen * aBlockCount;
+
+            grailMergeLeftWithXBuf(arr, pos + restToProcess, leftOverLen, lastLen, 0 - regBlockLen);
+        }
+        else {
+            grailCopy(arr, pos + restToProcess, pos + restToProcess - regBlockLen, leftOverLen);
+        }
+    }
+
+    /***** End Sort With Extra Buffer *****/
+
+    // build blocks of length buildLen
+    // input: [-buildLen, -1] elements are buffer
+    // output: first buildLen elements are buffer, blocks 2 * buildLen and last subblock sorted
+    private void grailBuildBlocks(int[] arr, int pos, int len, int buildLen, int[] extbuf, int bufferPos, int extBufLen) {
+        int buildBuf = buildLen < extBufLen ? buildLen : extBufLen;
+
+        while((buildBuf & (buildBuf - 1)) != 0) {
+            buildBuf &= buildBuf - 1;  // max power or 2 - just in case
+        }
+
+        int extraDist, part;
+
+        // the pairwise pass below shifts items by two, so a 1-item buffer is no use
+        if(buildBuf >= 2) {
+            grailToBuffer(arr, pos - buildBuf, extbuf, bufferPos, buildBuf);
+
+            for(int dist = 1; dist < len; dist += 2) {
+                extraDist = 0;
+                if(Integer.compare(arr[pos + (dist - 1)], arr[pos + dist]) > 0) extraDist = 1;
+
+                grailMove(arr, pos + dist - 3, pos + dist - 1 + extraDist);
+                grailMove(arr, pos + dist - 2, pos + dist - extraDist);
+            }
+            if(len % 2 != 0) grailMove(arr, pos + len - 3, pos + len - 1);
+
+            pos -= 2;
+
+            for(part = 2; part < buildBuf; part *= 2) {
+                int left = 0, right = len - 2 * part;
+
+                while(left <= right) {
+                    grailMergeLeftWithXBuf(arr, pos + left, part, part, 0 - part);
+                    left += 2 * part;
+                }
+
+                int rest = len - left;
+
+                if(rest > part) grailMergeLeftWithXBuf(arr, pos + left, part, rest - part, 0 - part);
+                else grailCopy(arr, pos + left, pos + left - part, len - left);
+                pos -= part;
+            }
+            grailFromBuffer(extbuf, bufferPos, arr, pos + len, buildBuf);
+        }
+        else {
+            for(int dist = 1; dist < len; dist += 2) {
+                extraDist = 0;
+                if(Integer.compare(arr[pos + (dist - 1)], arr[pos + dist]) > 0) extraDist = 1;
+
+                grailSwap(arr, pos + (dist - 3), pos + (dist - 1 + extraDist));
+                grailSwap(arr, pos + (dist - 2), pos + (dist - extraDist));
+            }
+
+            if(len % 2 != 0) grailSwap(arr, pos + (len - 1), pos + (len - 3));
+
+            pos -= 2;
+            part = 2;
+        }
+
+        while(part < buildLen) {
+            int left = 0, right = len - 2 * part;
+
+            while(left <= right) {
+                grailMergeLeft(arr, pos + left, part, part, 0 - part);
+                left += 2 * part;
+            }
+
+            int rest = len - left;
+
+            if(rest > part) {
+                grailMergeLeft(arr, pos + left, part, rest - part, 0 - part);
+            }
+            else grailRotate(arr, pos + left - part, part, rest, extbuf, bufferPos, extBufLen);
+
+            pos -= part;
+            part *= 2;
+        }
+
+        int restToBuild = len % (2 * buildLen);
+        int leftOverPos = len - restToBuild;
+
+        if(restToBuild <= buildLen) grailRotate(arr, pos + leftOverPos, restToBuild, buildLen, extbuf, bufferPos, extBufLen);
+        else grailMergeRight(arr, pos + leftOverPos, buildLen, restToBuild - buildLen, buildLen);
+
+        while(leftOverPos > 0) {
+            leftOverPos -= 2 * buildLen;
+            grailMergeRight(arr, pos + leftOverPos, buildLen, buildLen, buildLen);
+        }
+    }
+
+    // Sorts the blocks by their first items, swapping keys along with them.
+    // Ties go to the block with the smaller key, i.e. the one that came first.
+    // Returns where midkey ended up.
+    //
+    // A blocks [0, midkey) and B blocks [midkey, blockCount) are each in order already,
+    // so this is a merge of the two: the next block is the first B block left or the
+    // smallest A block left. The A blocks left stay together, just ahead of the B blocks
+    // left. Placing a B block swaps it with the first of them, which keeps track of the
+    // smallest; placing an A block swaps it with the first of them and then scans their
+    // keys for the next smallest. That is blockCount head comparisons and at most
+    // (blockCount / 2)^2 / 2 key comparisons, where a selection sort needs
+    // blockCount^2 / 2 head comparisons: a smaller constant, not a better bound. The
+    // scan is still quadratic in blockCount, which keeps it within O(merged length)
+    // only because blocks are about sqrt(len) items long. A heap over the A keys
+    // would take O(blockCount log blockCount), but it needs room the sort doesn't have.
+    private int grailSelectBlocks(int[] arr, int keyPos, int blockPos, int blockCount, int regBlockLen, int midkey) {
+        int next = 0, aEnd = midkey, minA = 0;
+        int midkeyPos = midkey;
+
+        while(next < aEnd) {
+            // B goes first only if it's strictly smaller, A keys are smaller than B keys
+            if(aEnd < blockCount && Integer.compare(arr[blockPos + aEnd * regBlockLen], arr[blockPos + minA * regBlockLen]) < 0) {
+                if(aEnd == midkey) midkeyPos = next;
+
+                grailMultiSwap(arr, blockPos + next * regBlockLen, blockPos + aEnd * regBlockLen, regBlockLen);
+                grailSwap(arr, keyPos + next, keyPos + aEnd);
+
+                if(minA == next) minA = aEnd;
+                aEnd++;
+            }
+            else {
+                if(minA != next) {
+                    grailMultiSwap(arr, blockPos + next * regBlockLen, blockPos + minA * regBlockLen, regBlockLen);
+                    grailSwap(arr, keyPos + next, keyPos + minA);
+                }
+                minA = next + 1;
+                for(int index = next + 2; index < aEnd; index++) {
+                    if(Integer.compare(arr[keyPos + index], arr[keyPos + minA]) < 0) minA = index;
+                }
+            }
+            next++;
+        }
+        return midkeyPos;
+    }
+
+    // keys are on the left of arr. Blocks of length buildLen combined. We'll combine them into pairs
+    // buildLen and keys are powers of 2. (2 * buildLen / regBlockLen) keys are guaranteed
+    // buffer - merges with it if havebuf and it holds a block, else only rotates with it
+    private void grailCombineBlocks(int[] arr, int keyPos, int pos, int len, int buildLen, int regBlockLen,
+                                           boolean havebuf, int[] buffer, int bufferPos, int bufferLen) {
+
+        boolean xbuf = havebuf && regBlockLen <= bufferLen;
+
+        int combineLen = len / (2 * buildLen);
+        int leftOver = len % (2 * buildLen);
+
+        if(leftOver <= buildLen) {
+            len -= leftOver;
+            leftOver = 0;
+        }
+
+        if(xbuf) grailToBuffer(arr, pos - regBlockLen, buffer, bufferPos, regBlockLen);
+
+        for(int i = 0; i <= combineLen; i++) {
+            if(i == combineLen && leftOver == 0) break;
+
+            int blockPos = pos + i * 2 * buildLen;
+            int blockCount = (i == combineLen ? leftOver : 2 * buildLen) / regBlockLen;
+
+            grailInsertSort(arr, keyPos, blockCount + (i == combineLen ? 1 : 0));
+
+            int midkey = grailSelectBlocks(arr, keyPos, blockPos, blockCount, regBlockLen, buildLen / regBlockLen);
+
+            int aBlockCount, lastLen;
+            aBlockCount = lastLen = 0;
+            if(i == combineLen) lastLen = leftOver % regBlockLen;
+
+            if(lastLen != 0) {
+                while(aBlockCount < blockCount && Integer.compare(arr[blockPos + blockCount * regBlockLen],
+                      arr[blockPos + (blockCount - aBlockCount - 1) * regBlockLen]) < 0) {
+
+                    aBlockCount++;
+                }
+            }
+
+            if(xbuf) {
+                grailMergeBuffersLeftWithXBuf(arr, keyPos, keyPos + midkey, blockPos, blockCount - aBlockCount,
+                                              regBlockLen, aBlockCount, lastLen);
+            }
+            else grailMergeBuffersLeft(arr, keyPos, keyPos + midkey, blockPos, blockCount - aBlockCount,
+                                       regBlockLen, havebuf, aBlockCount, lastLen, buffer, bufferPos, bufferLen);
+        }
+        if(xbuf) {
+            grailCopy(arr, pos - regBlockLen, pos, len);
+
+            grailFromBuffer(buffer, bufferPos, arr, pos - regBlockLen, regBlockLen);
+        }
+        else if(havebuf) {
+            while(--len >= 0) grailSwap(arr, pos + len, pos + len - regBlockLen);
+        }
+    }
+
+    /***** Few Keys Sort *****/
+
+    // Taken when grailGetKeys scanned the whole array and found fewer than 4 distinct
+    // items. Every other item then equals one of the keys, so the sort is a stable
+    // partition into the items less than, equal to and greater than the middle key:
+    // one comparison per item, and O(len * log(len / bufferLen)) moves.
+    // arr[pos, pos + keysFound - 1] - the distinct keys, sorted, each the first of its class
+    private void grailFewKeysSort(int[] arr, int pos, int len, int keysFound, int[] buffer, int bufferPos, int bufferLen) {
+        if(keysFound > 1) {
+            grailPartitionByKey(arr, pos + keysFound, len - keysFound, pos + 1, buffer, bufferPos, bufferLen);
+        }
+
+        // each key is the first of its class, so it goes in ahead of the equal items
+        grailMergeWithoutBuffer(arr, pos, keysFound, len - keysFound, buffer, bufferPos, bufferLen);
+    }
+
+    // The partition hands back the lengths of its first two classes, packed into one
+    // long; the third is whatever is left of the range.
+    private static long grailPackCounts(int lessLen, int equalLen) {
+        return ((long) lessLen << 32) | equalLen;
+    }
+
+    // Stable partition of arr[pos, pos + len - 1] around the item at keyPos, which lies
+    // outside the range. Halves are partitioned on their own, then
+    // L1 E1 G1 L2 E2 G2 -> L1 L2 E1 E2 G1 G2 with two rotations.
+    // returns the lengths of the less and equal classes, packed by grailPackCounts
+    // buffer - partitions ranges that fit in it, and rotates with it
+    private long grailPartitionByKey(int[] arr, int pos, int len, int keyPos, int[] buffer, int bufferPos, int bufferLen) {
+        if(len <= bufferLen) return grailPartitionWithBuffer(arr, pos, len, keyPos, buffer, bufferPos, bufferLen);
+        if(len <= grailPartitionRunLen) return grailPartitionInPlace(arr, pos, len, keyPos);
+
+        int leftLen = len / 2, rightLen = len - leftLen;
+
+        long left = grailPartitionByKey(arr, pos, leftLen, keyPos, buffer, bufferPos, bufferLen);
+        long right = grailPartitionByKey(arr, pos + leftLen, rightLen, keyPos, buffer, bufferPos, bufferLen);
+
+        int less1 = (int) (left >>> 32), equal1 = (int) left, greater1 = leftLen - less1 - equal1;
+        int less2 = (int) (right >>> 32), equal2 = (int) right;
+
+        grailRotate(arr, pos + less1, equal1 + greater1, less2, buffer, bufferPos, bufferLen);
+        grailRotate(arr, pos + less1 + less2 + equal1, greater1, equal2, buffer, bufferPos, bufferLen);
+
+        return grailPackCounts(less1 + less2, equal1 + equal2);
+    }
+
+    // less items are packed in place, equal items fill the buffer from the front and
+    // greater items from the back, then both are copied back in order
+    private long grailPartitionWithBuffer(int[] arr, int pos, int len, int keyPos, int[] buffer, int bufferPos, int bufferLen) {
+        int lessLen = 0, equalLen = 0, greaterLen = 0;
+        int last = bufferPos + bufferLen - 1;
+
+        for(int i = pos; i < pos + len; i++) {
+            int cmp = Integer.compare(arr[i], arr[keyPos]);
+
+            if(cmp < 0) grailMove(arr, pos + lessLen++, i);
+            else if(cmp == 0) grailToBuffer(arr, i, buffer, bufferPos + equalLen++, 1);
+            else grailToBuffer(arr, i, buffer, last - greaterLen++, 1);
+        }
+
+        grailFromBuffer(buffer, bufferPos, arr, pos + lessLen, equalLen);
+        for(int i = 0, dest = pos + lessLen + equalLen; i < greaterLen; i++) {
+            grailFromBuffer(buffer, last - i, arr, dest + i, 1);
+        }
+        return grailPackCounts(lessLen, equalLen);
+    }
+
+    // short ranges without a buffer: each less or equal item moves back to the end of its class
+    private long grailPartitionInPlace(int[] arr, int pos, int len, int keyPos) {
+        int lessLen = 0, equalLen = 0;
+
+        for(int i = 0; i < len; i++) {
+            int cmp = Integer.compare(arr[pos + i], arr[keyPos]);
+
+            if(cmp < 0) {
+                grailRotate(arr, pos + lessLen, i - lessLen, 1);
+                lessLen++;
+            }
+            else if(cmp == 0) {
+                grailRotate(arr, pos + lessLen + equalLen, i - lessLen - equalLen, 1);
+                equalLen++;
+            }
+        }
+        return grailPackCounts(lessLen, equalLen);
+    }
+
+    /***** End Few Keys Sort *****/
+
+    private void grailCommonSort(int[] arr, int pos, int len, int[] buffer, int bufferPos, int bufferLen) {
+        if(len <= 32) {
+            grailInsertSort(arr, pos, len);
+            return;
+        }
+
+        int blockLen = 1;
+        while((long) blockLen * blockLen < len) blockLen *= 2;
+        int numKeys = ((len - 1) / blockLen) + 1;
+        int keyLength = numKeys + blockLen;
+
+        int keysFound = grailGetKeys(arr, pos, len, keyLength, buffer, bufferPos, bufferLen);
+        grailSortWithKeys(arr, pos, len, keysFound, buffer, bufferPos, bufferLen);
+    }
+
+    // arr[pos, pos + keysFound - 1] - distinct keys, as gathered by grailGetKeys
+    private void grailSortWithKeys(int[] arr, int pos, int len, int keysFound, int[] buffer, int bufferPos, int bufferLen) {
+        int blockLen = 1;
+        while((long) blockLen * blockLen < len) blockLen *= 2;
+        int numKeys = ((len - 1) / blockLen) + 1;
+        int keyLength = numKeys + blockLen;
+
+        boolean bufferEnabled = true;
+
+        if(keysFound < keyLength) {
+            if(keysFound < 4) {
+                grailFewKeysSort(arr, pos, len, keysFound, buffer, bufferPos, bufferLen);
+                return;
+            }
+
+            numKeys = blockLen;
+            while(numKeys > keysFound) numKeys /= 2;
+
+            bufferEnabled = false;
+            blockLen = 0;
+        }
+
+        int dist = blockLen + numKeys;
+        int buildLen = bufferEnabled ? blockLen : numKeys;
+
+        if(bufferEnabled) {
+            grailBuildBlocks(arr, pos + dist, len - dist, buildLen, buffer, bufferPos, bufferLen);
+        }
+        else {
+            grailBuildBlocks(arr, pos + dist, len - dist, buildLen, null, bufferPos, 0);
+        }
+
+        // 2 * buildLen are built
+        while(len - dist > (buildLen *= 2)) {
+            int regBlockLen = blockLen;
+            boolean buildBufEnabled = bufferEnabled;
+
+            if(!bufferEnabled) {
+                if(numKeys > 4 && numKeys / 8 * numKeys >= buildLen) {
+                    regBlockLen = numKeys / 2;
+                    buildBufEnabled = true;
+                }
+                else {
+                    int calcKeys = 1;
+                    long i = (long) buildLen * keysFound / 2;
+
+                    while(calcKeys < numKeys && i != 0) {
+                        calcKeys *= 2;
+                        i /= 8;
+                    }
+                    regBlockLen = (2 * buildLen) / calcKeys;
+                }
+            }
+            grailCombineBlocks(arr, pos, pos + dist, len - dist, buildLen, regBlockLen, buildBufEnabled,
+                               buffer, bufferPos, bufferLen);
+        }
+
+        grailInsertSort(arr, pos, dist);
+        grailMergeWithoutBuffer(arr, pos, dist, len - dist, buffer, bufferPos, bufferLen);
+    }
+
+    /***** Adaptive Sort *****/
+
+    private void grailReverse(int[] arr, int pos, int len) {
+        for(int i = pos, j = pos + len - 1; i < j; i++, j--) grailSwap(arr, i, j);
+    }
+
+    // returns the end of the ascending run starting at arr[pos]
+    private int grailRunEnd(int[] arr, int pos, int end) {
+        while(++pos < end && Integer.compare(arr[pos - 1], arr[pos]) <= 0);
+        return pos;
+    }
+
+    private int grailCountRuns(int[] arr, int pos, int len) {
+        int runs = 1;
+
+        for(int i = pos + 1; i < pos + len; i++) {
+            if(Integer.compare(arr[i - 1], arr[i]) > 0) runs++;
+        }
+        return runs;
+    }
+
+    // Strictly descending runs are reversed in place. No two items in such a run
+    // are equal, so reversing them can't break stability.
+    private void grailReverseRuns(int[] arr, int pos, int len) {
+        int end = pos + len;
+
+        for(int i = pos + 1; i < end; i++) {
+            if(Integer.compare(arr[i - 1], arr[i]) > 0) {
+                int start = i - 1;
+
+                while(i + 1 < end && Integer.compare(arr[i], arr[i + 1]) > 0) i++;
+
+                grailReverse(arr, start, i - start + 1);
+            }
+        }
+    }
+
+    // arr[pos, pos + leftLen - 1] - buffer, arr[pos + leftLen, pos + leftLen + rightLen - 1] - right run,
+    // left run is parked in arr[leftPos, leftPos + leftLen - 1], somewhere after the right run
+    // -> arr[pos, pos + leftLen + rightLen - 1] merged, buffer ends up where the left run was parked
+    private void grailMergeParked(int[] arr, int pos, int leftPos, int leftLen, int rightLen) {
+        int left = leftPos, leftEnd = leftPos + leftLen;
+        int right = pos + leftLen, rightEnd = right + rightLen;
+        int dist = pos;
+
+        while(left < leftEnd && right < rightEnd) {
+            if(Integer.compare(arr[left], arr[right]) > 0) {
+                grailSwap(arr, dist++, right++);
+            }
+            else grailSwap(arr, dist++, left++);
+        }
+        while(left < leftEnd) grailSwap(arr, dist++, left++);
+    }
+
+    // arr[pos - blockLen, pos - 1] - buffer, arr[pos, pos + aLen - 1] - run A in whole blocks,
+    // arr[pos + aLen, pos + aLen + bLen - 1] - run B, longer than one block
+    // -> arr[pos - blockLen, pos + aLen + bLen - blockLen - 1] merged, buffer moved behind it
+    private void grailMergeRunBlocks(int[] arr, int keyPos, int pos, int aLen, int bLen, int blockLen) {
+        int blockCount = (aLen + bLen) / blockLen;
+        int lastLen = bLen % blockLen;
+
+        grailInsertSort(arr, keyPos, blockCount);
+
+        int midkey = grailSelectBlocks(arr, keyPos, pos, blockCount, blockLen, aLen / blockLen);
+
+        int aBlockCount = 0;
+        if(lastLen != 0) {
+            while(aBlockCount < blockCount && Integer.compare(arr[pos + blockCount * blockLen],
+                  arr[pos + (blockCount - aBlockCount - 1) * blockLen]) < 0) {
+
+                aBlockCount++;
+            }
+        }
+        grailMergeBuffersLeft(arr, keyPos, keyPos + midkey, pos, blockCount - aBlockCount, blockLen, true, aBlockCount, lastLen,
+                              null, 0, 0);
+    }
+
+    // arr[pos - blockLen, pos - 1] - buffer, arr[pos, pos + len1 - 1] ++ arr[pos + len1, pos + len1 + len2 - 1] - runs
+    // -> arr[pos - blockLen, pos + len1 + len2 - blockLen - 1] merged, buffer moved behind it
+    private void grailMergeRuns(int[] arr, int keyPos, int pos, int len1, int len2, int blockLen) {
+        if(len2 <= blockLen) {
+            grailMergeLeft(arr, pos, len1, len2, 0 - blockLen);
+            return;
+        }
+
+        // A is block merged from its last whole block on; the shorter head
+        // steps in front of the buffer and is merged last
+        int headLen = len1 % blockLen;
+        int headPos = pos - blockLen;
+        grailRotate(arr, headPos, blockLen, headLen);
+
+        pos += headLen;
+        len1 -= headLen;
+
+        if(len1 != 0) grailMergeRunBlocks(arr, keyPos, pos, len1, len2, blockLen);
+        else grailMultiSwap(arr, pos - blockLen, pos, len2);
+
+        if(headLen != 0) {
+            int parkPos = headPos + headLen + len1 + len2;
+
+            grailMultiSwap(arr, headPos, parkPos, headLen);
+            grailMergeParked(arr, headPos, parkPos, headLen, len1 + len2);
+        }
+    }
+
+    // Natural merge sort on top of GrailSort's keys and internal buffer: ascending
+    // runs are merged pairwise, pass after pass, with the buffer travelling right
+    // through each pass. cost: O(len * log(runs)), or 2 * len if already sorted
+    private void grailAdaptiveSort(int[] arr, int pos, int len) {
+        if(len <= 32) {
+            grailInsertSort(arr, pos, len);
+            return;
+        }
+
+        grailReverseRuns(arr, pos, len);
+
+        int runs = grailCountRuns(arr, pos, len);
+        if(runs == 1) return;
+
+        // with more than sqrt(len) runs, log(runs) is close to log(len)
+        // and the regular block sort does better
+        if((long) runs * runs > len) {
+            grailCommonSort(arr, pos, len, null, 0, 0);
+            return;
+        }
+
+        int blockLen = 1;
+        while((long) blockLen * blockLen < len) blockLen *= 2;
+        int numKeys = ((len - 1) / blockLen) + 1;
+        int keyLength = numKeys + blockLen;
+
+        // Gathering keys and buffer keeps the other items in order, so runs stay runs
+        int keysFound = grailGetKeys(arr, pos, len, keyLength, null, 0, 0);
+
+        if(keysFound < keyLength) {
+            // too few distinct items for a buffer
+            grailSortWithKeys(arr, pos, len, keysFound, null, 0, 0);
+            return;
+        }
+
+        int dist = pos + keyLength, end = pos + len;
+
+        while(grailRunEnd(arr, dist, end) != end) {
+            int left = dist;
+
+            while(left < end) {
+                int mid = grailRunEnd(arr, left, end);
+
+                if(mid == end) {
+                    grailMultiSwap(arr, left - blockLen, left, end - left);
+                    break;
+                }
+
+                int right = grailRunEnd(arr, mid, end);
+                grailMergeRuns(arr, pos, left, mid - left, right - mid, blockLen);
+                left = right;
+            }
+            grailRotate(arr, dist - blockLen, end - dist, blockLen);
+        }
+
+        grailInsertSort(arr, pos, keyLength);
+        grailMergeWithoutBuffer(arr, pos, keyLength, len - keyLength, null, 0, 0);
+    }
+
+    /***** End Adaptive Sort *****/
+
+    private void grailSortWithPooledBuffer(int[] arr, int pos, int len, int bufferLen) {
+        int[] ExtBuf = GrailBufferPool.ints.acquire(bufferLen);
+        try {
+            this.columns.acquire(bufferLen);
+            grailCommonSort(arr, pos, len, ExtBuf, 0, bufferLen);
+        }
+        finally {
+            GrailBufferPool.ints.release(ExtBuf);
+            this.columns.release();
+        }
+    }
+
+    private static IntColumnGrailSort grailSorter(int[] keys, int fromIndex, int toIndex, Object[] columns) {
+        GrailSort.grailRangeCheck(keys.length, fromIndex, toIndex);
+        return new IntColumnGrailSort(GrailColumns.grailAttach(keys, keys.length, columns));
+    }
+
+    // Sorts keys[fromIndex, toIndex - 1] and moves the same rows of every column with them.
+    // Each column must be an int[], long[], float[] or double[] as long as keys, e.g.
+    // grailSortWithDynBuffer(ids, new Object[] { timestamps, prices }).
+    public static void grailSortWithoutBuffer(int[] keys, Object[] columns) {
+        grailSortWithoutBuffer(keys, 0, keys.length, columns);
+    }
+    public static void grailSortWithoutBuffer(int[] keys, int fromIndex, int toIndex, Object[] columns) {
+        IntColumnGrailSort sorter = grailSorter(keys, fromIndex, toIndex, columns);
+        sorter.grailCommonSort(keys, fromIndex, toIndex - fromIndex, null, 0, 0);
+    }
+
+    public static void grailSortWithBuffer(int[] keys, Object[] columns) {
+        grailSortWithBuffer(keys, 0, keys.length, columns);
+    }
+    public static void grailSortWithBuffer(int[] keys, int fromIndex, int toIndex, Object[] columns) {
+        IntColumnGrailSort sorter = grailSorter(keys, fromIndex, toIndex, columns);
+        sorter.grailSortWithPooledBuffer(keys, fromIndex, toIndex - fromIndex, grailStaticBufferLen);
+    }
+
+    public static void grailSortWithDynBuffer(int[] keys, Object[] columns) {
+        grailSortWithDynBuffer(keys, 0, keys.length, columns);
+    }
+    public static void grailSortWithDynBuffer(int[] keys, int fromIndex, int toIndex, Object[] columns) {
+        IntColumnGrailSort sorter = grailSorter(keys, fromIndex, toIndex, columns);
+        sorter.grailSortWithPooledBuffer(keys, fromIndex, toIndex - fromIndex, GrailSort.grailDynBufferLen(toIndex - fromIndex));
+    }
+
+    // O(n) on sorted or reverse sorted keys and O(n log r) for r ascending or strictly
+    // descending runs of keys.
+    public static void grailSortAdaptive(int[] keys, Object[] columns) {
+        grailSortAdaptive(keys, 0, keys.length, columns);
+    }
+    public static void grailSortAdaptive(int[] keys, int fromIndex, int toIndex, Object[] columns) {
+        IntColumnGrailSort sorter = grailSorter(keys, fromIndex, toIndex, columns);
+        sorter.grailAdaptiveSort(keys, fromIndex, toIndex - fromIndex);
+    }
+}
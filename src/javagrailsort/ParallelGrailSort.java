@@ -0,0 +1,306 @@
+package javagrailsort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/********* Parallel Grail sorting ************************/
+/*                                                       */
+/* Splits the array into chunks that are Grail sorted    */
+/* by independent ForkJoinPool workers, each with its    */
+/* own keys and sqrt(chunk) buffer. Sorted chunks are    */
+/* then combined by a stable in-place parallel merge:    */
+/* the longer run is halved, its middle item is binary   */
+/* searched in the other run, the two inner parts are    */
+/* rotated, and both halves are merged concurrently.     */
+/* Once the shorter run fits in a sqrt(n) buffer, the    */
+/* merge finishes without further rotations.             */
+/*                                                       */
+/* Extra memory stays O(sqrt(n)) per worker thread.      */
+/*                                                       */
+/* Batches of many small sorts (sortAll, sortSlices) are */
+/* grouped into tasks of consecutive sorts instead, each */
+/* group sharing one buffer like GrailSort.grailSortAll. */
+/*                                                       */
+/* A sorter built with a parallelism owns its pool, and  */
+/* close() shuts that pool down. Pools passed in, and    */
+/* the common pool, are left to their owners.            */
+/*                                                       */
+/*********************************************************/
+
+final public class ParallelGrailSort<T> implements AutoCloseable {
+
+    final private static int grailDefaultCutoff = 1 << 16;
+
+    final private GrailSort<T> grail;
+    final private ForkJoinPool pool;
+    // true if this sorter created the pool, and close() shuts it down
+    final private boolean ownsPool;
+    final private int sequentialCutoff;
+
+    public ParallelGrailSort() {
+        this(new GrailSort<T>(), ForkJoinPool.commonPool(), false, grailDefaultCutoff);
+    }
+
+    public ParallelGrailSort(Comparator<? super T> cmp) {
+        this(new GrailSort<T>(cmp), ForkJoinPool.commonPool(), false, grailDefaultCutoff);
+    }
+
+    // parallelism - number of worker threads, in a pool owned by this sorter until close()
+    // sequentialCutoff - subarrays and merges up to this length are not split any further
+    public ParallelGrailSort(Comparator<? super T> cmp, int parallelism, int sequentialCutoff) {
+        this(new GrailSort<T>(cmp), new ForkJoinPool(parallelism), true, sequentialCutoff);
+    }
+
+    // the pool stays the caller's; close() doesn't shut it down
+    public ParallelGrailSort(Comparator<? super T> cmp, ForkJoinPool pool, int sequentialCutoff) {
+        this(new GrailSort<T>(cmp), pool, false, sequentialCutoff);
+    }
+
+    private ParallelGrailSort(GrailSort<T> grail, ForkJoinPool pool, boolean ownsPool, int sequentialCutoff) {
+        if(sequentialCutoff < 1) throw new IllegalArgumentException("sequentialCutoff < 1: " + sequentialCutoff);
+
+        this.grail = grail;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.sequentialCutoff = sequentialCutoff;
+    }
+
+    // Shuts down the pool this sorter created, if any; sorts already running finish.
+    // Afterwards, sorts that would be split throw RejectedExecutionException. Does
+    // nothing for the common pool or a pool passed in by the caller.
+    @Override
+    public void close() {
+        if(this.ownsPool) this.pool.shutdown();
+    }
+
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    public int getSequentialCutoff() {
+        return this.sequentialCutoff;
+    }
+
+    public void sort(T[] arr) {
+        sort(arr, 0, arr.length);
+    }
+
+    public void sort(T[] arr, int fromIndex, int toIndex) {
+        GrailSort.grailRangeCheck(arr.length, fromIndex, toIndex);
+        int len = toIndex - fromIndex;
+
+        if(len <= this.sequentialCutoff || this.pool.getParallelism() == 1) {
+            this.grail.grailSortWithDynBuffer(arr, fromIndex, toIndex);
+            return;
+        }
+
+        this.pool.invoke(grailSortTask(arr, fromIndex, len));
+    }
+
+    // a few chunks per worker keeps the pool busy when chunks finish unevenly
+    private long grailChunkLen(long len) {
+        long chunks = 4 * this.pool.getParallelism();
+        return Math.max(this.sequentialCutoff, (len - 1) / chunks + 1);
+    }
+
+    private SortTask grailSortTask(T[] arr, int pos, int len) {
+        return new SortTask(arr, pos, len, (int) grailChunkLen(len), GrailSort.grailDynBufferLen(len));
+    }
+
+    // Batch sorts, as GrailSort.grailSortAll and grailSortSlices. Consecutive small sorts
+    // are grouped into tasks of a chunk's worth of items, and each group shares one
+    // buffer. A sort longer than the sequential cutoff is split on its own, like sort().
+    public void sortAll(List<? extends T[]> arrays) {
+        int[] lengths = new int[arrays.size()];
+        int i = 0;
+        for(T[] arr : arrays) lengths[i++] = arr.length;
+
+        grailInvokeBatch(lengths, (from, to) -> this.grail.grailSortBatch(arrays.subList(from, to)),
+                         index -> grailSortTask(arrays.get(index), 0, lengths[index]));
+    }
+
+    public void sortSlices(T[] arr, int[] bounds) {
+        GrailSort.grailBoundsCheck(arr.length, bounds);
+        int[] lengths = new int[Math.max(bounds.length - 1, 0)];
+        for(int i = 0; i < lengths.length; i++) lengths[i] = bounds[i + 1] - bounds[i];
+
+        grailInvokeBatch(lengths, (from, to) -> this.grail.grailSortSlices(arr, bounds, from, to),
+                         index -> grailSortTask(arr, bounds[index], lengths[index]));
+    }
+
+    // sorts the batch's sorts from to to - 1 sequentially
+    private interface BatchGroup {
+        void sort(int from, int to);
+    }
+
+    private void grailInvokeBatch(int[] lengths, BatchGroup group, IntFunction<SortTask> single) {
+        long total = 0;
+        for(int len : lengths) total += len;
+
+        if(total <= this.sequentialCutoff || this.pool.getParallelism() == 1) {
+            group.sort(0, lengths.length);
+            return;
+        }
+
+        long groupLen = grailChunkLen(total);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        int from = 0;
+        long items = 0;
+
+        for(int i = 0; i < lengths.length; i++) {
+            if(lengths[i] > this.sequentialCutoff) {
+                if(from < i) tasks.add(grailGroupTask(group, from, i));
+                tasks.add(single.apply(i));
+                from = i + 1;
+                items = 0;
+            }
+            else if((items += lengths[i]) >= groupLen) {
+                tasks.add(grailGroupTask(group, from, i + 1));
+                from = i + 1;
+                items = 0;
+            }
+        }
+        if(from < lengths.length) tasks.add(grailGroupTask(group, from, lengths.length));
+
+        this.pool.invoke(ForkJoinTask.adapt(() -> {
+            ForkJoinTask.invokeAll(tasks);
+        }));
+    }
+
+    private static ForkJoinTask<?> grailGroupTask(BatchGroup group, int from, int to) {
+        return ForkJoinTask.adapt(() -> group.sort(from, to));
+    }
+
+    private final class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final T[] arr;
+        private final int pos, len, chunkLen, mergeBufLen;
+
+        SortTask(T[] arr, int pos, int len, int chunkLen, int mergeBufLen) {
+            this.arr = arr;
+            this.pos = pos;
+            this.len = len;
+            this.chunkLen = chunkLen;
+            this.mergeBufLen = mergeBufLen;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.len <= this.chunkLen) {
+                grail.grailSortWithDynBuffer(this.arr, this.pos, this.pos + this.len);
+                return;
+            }
+
+            int leftLen = this.len / 2;
+
+            invokeAll(new SortTask(this.arr, this.pos, leftLen, this.chunkLen, this.mergeBufLen),
+                      new SortTask(this.arr, this.pos + leftLen, this.len - leftLen, this.chunkLen, this.mergeBufLen));
+
+            new MergeTask(this.arr, this.pos, leftLen, this.len - leftLen, this.mergeBufLen).compute();
+        }
+    }
+
+    private final class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final T[] arr;
+        private final int pos, len1, len2, bufferLen;
+
+        MergeTask(T[] arr, int pos, int len1, int len2, int bufferLen) {
+            this.arr = arr;
+            this.pos = pos;
+            this.len1 = len1;
+            this.len2 = len2;
+            this.bufferLen = bufferLen;
+        }
+
+        @Override
+        protected void compute() {
+            grailParallelMerge(this.arr, this.pos, this.len1, this.len2, this.bufferLen, true);
+        }
+    }
+
+    // arr[0, len1 - 1] ++ arr[len1, len1 + len2 - 1] -> merged in place
+    @SuppressWarnings("unchecked")
+    private void grailParallelMerge(T[] arr, int pos, int len1, int len2, int bufferLen, boolean fork) {
+        while(len1 != 0 && len2 != 0) {
+            // items already in place at both ends don't take part in the merge
+            int skip = this.grail.grailBinSearch(arr, pos, len1, pos + len1, false);
+            pos += skip;
+            len1 -= skip;
+            if(len1 == 0) return;
+
+            len2 = this.grail.grailBinSearch(arr, pos + len1, len2, pos + len1 - 1, true);
+            if(len2 == 0) return;
+
+            if(len1 <= bufferLen || len2 <= bufferLen) {
+                int minLen = Math.min(len1, len2);
+                Object[] buffer = GrailBufferPool.objects.acquire(minLen);
+                try {
+                    this.grail.grailMergeWithExtBuf(arr, pos, len1, len2, (T[]) buffer, 0);
+                }
+                finally {
+                    Arrays.fill(buffer, 0, minLen, null);
+                    GrailBufferPool.objects.release(buffer);
+                }
+                return;
+            }
+
+            int cut1, cut2;
+            if(len1 >= len2) {
+                cut1 = len1 / 2;
+                //Binary Search left
+                cut2 = this.grail.grailBinSearch(arr, pos + len1, len2, pos + cut1, true);
+            }
+            else {
+                cut2 = len2 / 2;
+                //Binary Search right
+                cut1 = this.grail.grailBinSearch(arr, pos, len1, pos + len1 + cut2, false);
+            }
+
+            int shortLen = Math.min(len1 - cut1, cut2);
+            if(shortLen <= bufferLen) {
+                Object[] buffer = GrailBufferPool.objects.acquire(shortLen);
+                try {
+                    this.grail.grailRotate(arr, pos + cut1, len1 - cut1, cut2, (T[]) buffer, 0, shortLen);
+                }
+                finally {
+                    Arrays.fill(buffer, 0, shortLen, null);
+                    GrailBufferPool.objects.release(buffer);
+                }
+            }
+            else this.grail.grailRotate(arr, pos + cut1, len1 - cut1, cut2);
+
+            int rightPos = pos + cut1 + cut2;
+            int rightLen1 = len1 - cut1, rightLen2 = len2 - cut2;
+
+            if(fork && len1 + len2 > this.sequentialCutoff) {
+                MergeTask right = new MergeTask(arr, rightPos, rightLen1, rightLen2, bufferLen);
+                right.fork();
+                grailParallelMerge(arr, pos, cut1, cut2, bufferLen, true);
+                right.join();
+                return;
+            }
+
+            // sequential: recurse into the smaller half, loop on the larger one
+            if(cut1 + cut2 <= rightLen1 + rightLen2) {
+                grailParallelMerge(arr, pos, cut1, cut2, bufferLen, false);
+                pos = rightPos;
+                len1 = rightLen1;
+                len2 = rightLen2;
+            }
+            else {
+                grailParallelMerge(arr, rightPos, rightLen1, rightLen2, bufferLen, false);
+                len1 = cut1;
+                len2 = cut2;
+            }
+        }
+    }
+}
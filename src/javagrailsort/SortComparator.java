@@ -0,0 +1,12 @@
+package javagrailsort;
+
+import java.util.Comparator;
+
+class SortComparator implements Comparator<SortType> {
+    @Override
+    public int compare(SortType a, SortType b) {
+        if (a.key < b.key) return -1;
+        else if (a.key > b.key) return 1;
+        else return 0;
+    }
+}
@@ -1,8 +1,6 @@
 package javagrailsort;
 
-import java.util.Comparator;
-
-class SortType {
+class SortType implements Comparable<SortType> {
     public int key;
     public int value;
 
@@ -15,31 +13,11 @@ class SortType {
         this.key = key;
         this.value = value;
     }
-}
 
-class SortComparator implements Comparator<SortType> {
     @Override
-    public int compare(SortType a, SortType b) {
-        if (a.key < b.key) return -1;
-        else if (a.key > b.key) return 1;
+    public int compareTo(SortType other) {
+        if (this.key < other.key) return -1;
+        else if (this.key > other.key) return 1;
         else return 0;
     }
 }
-
-class GrailState {
-    private int leftOverLen;
-    private int leftOverFrag;
-    
-    public GrailState(int len, int frag) {
-        this.leftOverLen = len;
-        this.leftOverFrag = frag;
-    }
-    
-    public int getLeftOverLen() {
-        return leftOverLen;
-    }
-    
-    public int getLeftOverFrag() {
-        return leftOverFrag;
-    }
-}
\ No newline at end of file
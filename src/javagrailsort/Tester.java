@@ -1,5 +1,7 @@
 package javagrailsort;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
@@ -22,10 +24,19 @@ public class Tester {
     private double noBufferFinish;
     private double staticBufferFinish;
     private double dynamicBufferFinish;
+    private double adaptiveFinish;
+    private double parallelFinish;
+
+    private long noBufferAllocated;
+    private long staticBufferAllocated;
+    private long dynamicBufferAllocated;
+    private long adaptiveAllocated;
 
     private double noBuffAverage;
     private double statAverage;
     private double dynAverage;
+    private double adaAverage;
+    private double parAverage;
 
     public Tester() {
         this.seed = 100000001;
@@ -62,6 +73,29 @@ public class Tester {
         }
     }
 
+    // Bytes allocated so far by the calling thread, or -1 if the JVM can't tell.
+    // The sorts must not allocate anything beyond their external buffer, which
+    // comes from GrailBufferPool, so once the pool is warm this should not move.
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if(bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+            if(hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private boolean testAllocation(String name, long allocated, int run) {
+        if(allocated < 0) return true;
+
+        System.out.println("Grail Sort " + name + " allocated " + this.formatter.format(allocated) + " bytes.");
+        // the first run also loads classes and fills the buffer pool
+        return run == 0 || allocated == 0;
+    }
+
     private boolean testArray(SortType[] arr, int Len) {
         for(int i = 1; i < Len; i++) {
             int dk = this.test.compare(arr[i - 1], arr[i]);
@@ -72,7 +106,8 @@ public class Tester {
     }
 
     public static void main(String[] args) {
-        GrailSort GrailSorter = new GrailSort();
+        GrailSort<SortType> GrailSorter = new GrailSort<>();
+        ParallelGrailSort<SortType> ParallelSorter = new ParallelGrailSort<>();
         Tester GrailTest = new Tester();
 
         int NMax = 10000000;
@@ -99,25 +134,47 @@ public class Tester {
             GrailTest.generateArrayFinish = (timeFinish - timeStart) / 1e+6;
             SortType[] staticBufferArray = Arrays.copyOf(arr, arr.length);
             SortType[] dynamicBufferArray = Arrays.copyOf(arr, arr.length);
+            SortType[] adaptiveArray = Arrays.copyOf(arr, arr.length);
+            SortType[] parallelArray = Arrays.copyOf(arr, arr.length);
 
+            long allocStart = allocatedBytes();
             timeStart = System.nanoTime();
             GrailSorter.grailSortWithoutBuffer(arr);
             timeFinish = System.nanoTime();
+            GrailTest.noBufferAllocated = allocatedBytes() - allocStart;
             System.out.println("Finished Grail Sort w/o buffer");
             GrailTest.noBufferFinish = (timeFinish - timeStart) / 1e+6;
             
+            allocStart = allocatedBytes();
             timeStart = System.nanoTime();
             GrailSorter.grailSortWithBuffer(staticBufferArray);
             timeFinish = System.nanoTime();
+            GrailTest.staticBufferAllocated = allocatedBytes() - allocStart;
             System.out.println("Finished Grail Sort w/ static buffer");
             GrailTest.staticBufferFinish = (timeFinish - timeStart) / 1e+6;
 
+            allocStart = allocatedBytes();
             timeStart = System.nanoTime();
             GrailSorter.grailSortWithDynBuffer(dynamicBufferArray);
-            System.out.println("Finished Grail Sort w/ dynamic buffer");
             timeFinish = System.nanoTime();
+            GrailTest.dynamicBufferAllocated = allocatedBytes() - allocStart;
+            System.out.println("Finished Grail Sort w/ dynamic buffer");
             GrailTest.dynamicBufferFinish = (timeFinish - timeStart) / 1e+6;
 
+            allocStart = allocatedBytes();
+            timeStart = System.nanoTime();
+            GrailSorter.grailSortAdaptive(adaptiveArray);
+            timeFinish = System.nanoTime();
+            GrailTest.adaptiveAllocated = allocatedBytes() - allocStart;
+            System.out.println("Finished adaptive Grail Sort");
+            GrailTest.adaptiveFinish = (timeFinish - timeStart) / 1e+6;
+
+            timeStart = System.nanoTime();
+            ParallelSorter.sort(parallelArray);
+            timeFinish = System.nanoTime();
+            System.out.println("Finished parallel Grail Sort on " + ParallelSorter.getParallelism() + " threads");
+            GrailTest.parallelFinish = (timeFinish - timeStart) / 1e+6;
+
             System.out.println(" ");
             System.out.println("New array of length " + GrailTest.formatter.format(NMax) + " in " + GrailTest.formatter.format(GrailTest.newArrayFinish) + " milliseconds.");
             System.out.println("Generated array of length " + GrailTest.formatter.format(NMax) + " in " + GrailTest.formatter.format(GrailTest.generateArrayFinish) + " milliseconds.");
@@ -140,9 +197,31 @@ public class Tester {
             }
             else System.out.println("Grail Sorting " + GrailTest.formatter.format(NMax) + " numbers with dynamic buffer sorted successfully in " + GrailTest.formatter.format(GrailTest.dynamicBufferFinish) + " milliseconds.");
 
+            if(!GrailTest.testArray(adaptiveArray, adaptiveArray.length)) {
+                System.out.println("Adaptive Grail Sort DID NOT sort successfully.");
+                System.exit(1);
+            }
+            else System.out.println("Adaptive Grail Sorting " + GrailTest.formatter.format(NMax) + " numbers sorted successfully in " + GrailTest.formatter.format(GrailTest.adaptiveFinish) + " milliseconds.");
+
+            if(!GrailTest.testArray(parallelArray, parallelArray.length)) {
+                System.out.println("Parallel Grail Sort DID NOT sort successfully.");
+                System.exit(1);
+            }
+            else System.out.println("Parallel Grail Sorting " + GrailTest.formatter.format(NMax) + " numbers sorted successfully in " + GrailTest.formatter.format(GrailTest.parallelFinish) + " milliseconds.");
+
+            if(!GrailTest.testAllocation("without buffers", GrailTest.noBufferAllocated, j)
+            || !GrailTest.testAllocation("with static buffer", GrailTest.staticBufferAllocated, j)
+            || !GrailTest.testAllocation("with dynamic buffer", GrailTest.dynamicBufferAllocated, j)
+            || !GrailTest.testAllocation("adaptive", GrailTest.adaptiveAllocated, j)) {
+                System.out.println("Grail Sort allocated memory beyond its buffer.");
+                System.exit(1);
+            }
+
             GrailTest.noBuffAverage += GrailTest.noBufferFinish;
             GrailTest.statAverage += GrailTest.staticBufferFinish;
             GrailTest.dynAverage += GrailTest.dynamicBufferFinish;
+            GrailTest.adaAverage += GrailTest.adaptiveFinish;
+            GrailTest.parAverage += GrailTest.parallelFinish;
             
             if(NMaxKey == ((int) (2*Math.sqrt(NMax))) - 1) {
                 NMaxKey = ((int) (Math.sqrt(NMax))) - 1;
@@ -160,5 +239,7 @@ public class Tester {
         System.out.println("Average time in ms without buffer: " + GrailTest.noBuffAverage / sortRuns);
         System.out.println("Average time in ms with static buffer: " + GrailTest.statAverage / sortRuns);
         System.out.println("Average time in ms with dynamic buffer: " + GrailTest.dynAverage / sortRuns);
+        System.out.println("Average time in ms adaptive: " + GrailTest.adaAverage / sortRuns);
+        System.out.println("Average time in ms in parallel: " + GrailTest.parAverage / sortRuns);
     }
 }
\ No newline at end of file